@@ -3,12 +3,49 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.*;
 import java.awt.image.*;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 
 // Wyliczenie określające właściciela pocisku
@@ -19,921 +56,5005 @@ enum BulletOwner {
 
 // Wyliczenie dla typów pocisków wroga
 enum EnemyBulletType {
-    TYPE1,
-    TYPE2,
-    TYPE3,
-    TYPE4
-}
-
-
-abstract class Bullet {
-    protected Plansza p;
-    protected float x, y;
-    protected float dx, dy;
-    protected BulletOwner owner;
-    protected Image image;
-    protected Shape hitbox;
-    protected int width, height;
+    TYPE1(3000),
+    TYPE2(2700),
+    TYPE3(3300),
+    TYPE4(2400);
 
-    public Bullet(Plansza p, float startX, float startY, float dx, float dy, BulletOwner owner, Image image) {
-        this.p = p;
-        this.x = startX;
-        this.y = startY;
-        this.dx = dx;
-        this.dy = dy;
-        this.owner = owner;
-        this.image = image;
-        // Szerokość/wysokość są inicjalizowane już w klasach pochodnych.
-        // Tutaj tylko wywołujemy metodę inicjalizacji hitboxa
-        initializeHitbox();
+    // Odstęp między strzałami wroga z tym typem pocisku (ms)
+    final int fireDelay;
 
-        if (owner == BulletOwner.ENEMY && this.image instanceof BufferedImage) {
-            this.image = rotateImage180((BufferedImage) this.image);
-        }        
-        
+    EnemyBulletType(int fireDelay) {
+        this.fireDelay = fireDelay;
     }
+}
 
-    // Każda podklasa pocisku ma swój sposób inicjalizacji hitboxa
-    protected abstract void initializeHitbox();
 
-    // Aktualizacja hitboxa podczas ruchu
-    protected abstract void updateHitbox();
+// Rodzaje wrogów: rozmiar, zdrowie (0 - ginie od jednego trafienia), typ pocisku i obraz
+enum EnemyKind {
+    TYPE1(40, 30, 0, EnemyBulletType.TYPE1, "mob_small.png"),
+    TYPE2(50, 35, 0, EnemyBulletType.TYPE2, "mob2.png"),
+    TYPE3(45, 32, 0, EnemyBulletType.TYPE3, "mob3.png"),
+    TYPE4(55, 40, 0, EnemyBulletType.TYPE4, "mob4.png"),
+    BOSS1(250, 150, 200, EnemyBulletType.TYPE1, "boss1.png"),
+    BOSS2(300, 180, 300, EnemyBulletType.TYPE2, "boss.png");
+
+    final int width;
+    final int height;
+    final int maxHealth;
+    final EnemyBulletType bulletType;
+    final String imagePath;
+
+    EnemyKind(int width, int height, int maxHealth, EnemyBulletType bulletType, String imagePath) {
+        this.width = width;
+        this.height = height;
+        this.maxHealth = maxHealth;
+        this.bulletType = bulletType;
+        this.imagePath = imagePath;
+    }
 
-    // Sprawdzanie kolizji
-    protected abstract void checkCollision();
+    boolean isBoss() {
+        return maxHealth > 0;
+    }
+}
 
+// Wzorce strzałów bossów - opis jednej salwy. Kąty w jednostkach tablicy BossPatterns
+// (BossPatterns.ANGLES na pełny obrót, 0 - w prawo, ANGLES / 4 - w dół).
+//   RING    - pociski równo na całym okręgu; okrąg obraca się o spin co salwę
+//   FAN     - wachlarz w dół o rozrzucie spread; przy spin != 0 kołysze się o pół rozrzutu
+//   SPIRAL  - ramiona (pociski) równo na okręgu, obracane o spin co salwę (krótki odstęp)
+//   AIMED   - seria w stronę gracza o rozrzucie spread
+enum BulletPattern {
+    //            kształt        pociski rozrzut spin prędkość  odstęp(ms) salwy  typ pocisku
+    FAN_5(        Shape.FAN,     5,      160,    0,   3.0f,     900,       3,     EnemyBulletType.TYPE1),
+    SWEEPING_FAN( Shape.FAN,     7,      220,    24,  3.5f,     300,       8,     EnemyBulletType.TYPE1),
+    AIMED_BURST(  Shape.AIMED,   3,      40,     0,   5.0f,     150,       4,     EnemyBulletType.TYPE2),
+    RING_16(      Shape.RING,    16,     0,      20,  2.5f,     700,       4,     EnemyBulletType.TYPE3),
+    RING_24(      Shape.RING,    24,     0,      -12, 2.5f,     600,       4,     EnemyBulletType.TYPE3),
+    SPIRAL_2(     Shape.SPIRAL,  2,      0,      37,  3.0f,     60,        60,    EnemyBulletType.TYPE4),
+    SPIRAL_4(     Shape.SPIRAL,  4,      0,      -29, 3.0f,     75,        48,    EnemyBulletType.TYPE4);
+
+    enum Shape {
+        RING, FAN, SPIRAL, AIMED
+    }
 
-    
+    final Shape shape;
+    final int bullets;
+    final int spread;
+    final int spin;
+    final float speed;
+    final int intervalMillis;
+    final int volleys;  // Ile salw, zanim boss przejdzie do kolejnego wzorca fazy
+    final EnemyBulletType bulletType;
+
+    BulletPattern(Shape shape, int bullets, int spread, int spin, float speed, int intervalMillis, int volleys,
+            EnemyBulletType bulletType) {
+        this.shape = shape;
+        this.bullets = bullets;
+        this.spread = spread;
+        this.spin = spin;
+        this.speed = speed;
+        this.intervalMillis = intervalMillis;
+        this.volleys = volleys;
+        this.bulletType = bulletType;
+    }
+}
 
-    // Logika ruchu pocisku
-    public void move() {
-        x += dx;
-        y += dy;
-        updateHitbox();
-        checkCollision();
+// Typy ulepszeń i ich obrazy
+enum PowerUpType {
+    EXTRA_LIFE("powerup_extra_life.png"),
+    INCREASE_FIRE_RATE("powerup_fire_rate.png"),
+    SHIELD("powerup_shield.png");
 
-        // Jeśli pocisk wyleciał poza ekran - usuwamy go
-        if (y < 0 || y > p.getHeight() || x < 0 - width || x > p.getWidth() + width) {
-            p.removeBullet(this);
-        }
-    }
+    final String imagePath;
 
-    // Rysowanie pocisku
-    public void draw(Graphics2D g2d) {
-        g2d.drawImage(image, (int)x, (int)y, width, height, null);
+    PowerUpType(String imagePath) {
+        this.imagePath = imagePath;
     }
+}
 
-    private BufferedImage rotateImage180(BufferedImage src) {
-        AffineTransform transform = new AffineTransform();
-        // Obrót o 180 stopni wokół środka obrazu
-        transform.rotate(Math.toRadians(180), src.getWidth() / 2.0, src.getHeight() / 2.0);
-        AffineTransformOp op = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-        BufferedImage rotated = op.filter(src, null);
-        return rotated;
-    }
+// Zdarzenia Java Flight Recorder. Włączone przez airplane.jfc:
+//   java -XX:StartFlightRecording=settings=airplane.jfc,filename=gra.jfr Project
+// Bez stosu wywołań (StackTrace(false)), więc można je zostawić włączone na stałe.
+@Name("airplane.Tick")
+@Label("Tick symulacji")
+@Category({"Airplane Game", "Symulacja"})
+@Description("Jeden krok GameWorld.step() z liczbą obiektów")
+@StackTrace(false)
+class TickEvent extends Event {
+    @Label("Krok")
+    long step;
+    @Label("Pociski")
+    int bullets;
+    @Label("Wrogowie")
+    int enemies;
+    @Label("Ulepszenia")
+    int powerUps;
+    @Label("Wybuchy")
+    int explosions;
+    @Label("Nowe pociski")
+    int spawned;
+    @Label("Kolizje")
+    int collisions;
+}
 
+@Name("airplane.Paint")
+@Label("Rysowanie klatki")
+@Category({"Airplane Game", "Rysowanie"})
+@StackTrace(false)
+class PaintEvent extends Event {
+    @Label("Tryb aktywny")
+    boolean active;
+    @Label("Pociski")
+    int bullets;
 }
 
+@Name("airplane.LevelInit")
+@Label("Inicjalizacja poziomu")
+@Category({"Airplane Game", "Symulacja"})
+@StackTrace(false)
+class LevelInitEvent extends Event {
+    @Label("Poziom")
+    int level;
+    @Label("Wrogowie")
+    int enemies;
+    @Label("Przygotowany w tle")
+    boolean prefetched;
+}
 
-class Explosion {
-    private float x, y;
-    
-    private List<Image> frames; 
-    
-    private Image gif;
-    
-    private int currentFrame;
-    private long lastFrameTime;
-    private int frameDelay;
-    private boolean finished;
+@Name("airplane.LevelUp")
+@Label("Przejście do poziomu")
+@Category({"Airplane Game", "Symulacja"})
+@StackTrace(false)
+class LevelUpEvent extends Event {
+    @Label("Poziom")
+    int level;
+    @Label("Punkty")
+    int score;
+}
 
-    public Explosion(float x, float y, List<Image> frames, int frameDelay) {
-        this.x = x;
-        this.y = y;
-        this.frames = frames;
-        this.frameDelay = frameDelay;
-        this.currentFrame = 0;
-        this.lastFrameTime = System.currentTimeMillis();
-        this.finished = false;
-    }
+@Name("airplane.GameOver")
+@Label("Koniec gry")
+@Category({"Airplane Game", "Symulacja"})
+@StackTrace(false)
+class GameOverEvent extends Event {
+    @Label("Wygrana")
+    boolean won;
+    @Label("Punkty")
+    int score;
+    @Label("Poziom")
+    int level;
+    @Label("Krok")
+    long step;
+}
 
-    public Explosion(float x, float y, Image gif) {
-        this.x = x;
-        this.y = y;
-        this.gif = gif;
-        this.finished = false;
-        this.frames = null;
-    }
+@Name("airplane.EnemyVolley")
+@Label("Salwa wrogów")
+@Category({"Airplane Game", "Symulacja"})
+@StackTrace(false)
+class EnemyVolleyEvent extends Event {
+    @Label("Strzelający")
+    int shooters;
 
-    public void update() {
-        if (finished) return;
+    @Label("Pociski bossów")
+    int bossBullets;
+}
 
-        if (frames != null) {
-            long currentTime = System.currentTimeMillis();
-            if (currentTime - lastFrameTime >= frameDelay) {
-                currentFrame++;
-                lastFrameTime = currentTime;
-                if (currentFrame >= frames.size()) {
-                    finished = true;
-                }
-            }
-        }
-        else {
-            long currentTime = System.currentTimeMillis();
-            if (lastFrameTime == 0) {
-                lastFrameTime = currentTime;
-            }
-            if (currentTime - lastFrameTime > 400) { 
-                finished = true;
-            }
-        }
-    }
+@Name("airplane.SpriteDecode")
+@Label("Wczytanie obrazu")
+@Category({"Airplane Game", "Zasoby"})
+@Description("Dekodowanie pliku albo utworzenie wariantu (obrót) w SpriteCache")
+@StackTrace(false)
+class SpriteDecodeEvent extends Event {
+    @Label("Plik")
+    String path;
+    @Label("Operacja")
+    String operation;
+    @Label("Szerokość")
+    int width;
+    @Label("Wysokość")
+    int height;
+}
 
-    public void draw(Graphics2D g2d) {
-        if (finished) return;
-    
-        int desiredWidth = 100;  
-        int desiredHeight = 100; 
-    
-        if (frames != null) {
-            Image currentImage = frames.get(currentFrame);
-            g2d.drawImage(currentImage, (int)x, (int)y, desiredWidth, desiredHeight, null);
-        } else {
-            g2d.drawImage(gif, (int)x, (int)y, desiredWidth, desiredHeight, null);
-        }
+// Wspólna pamięć podręczna obrazów (sprite'ów).
+// Każdy plik jest dekodowany z dysku tylko raz, a jego wariant obrócony o 180 stopni
+// jest tworzony raz i współdzielony przez wszystkie obiekty gry. Obrazy w rozmiarze,
+// w jakim są rysowane, trzyma DisplaySprites.
+final class SpriteCache {
+    enum Variant {
+        ORIGINAL,
+        ROTATED_180
     }
-    
 
-    public boolean isFinished() {
-        return finished;
-    }
+    // Wpis dla jednego pliku: oryginał, warianty i zaślepka na wypadek braku pliku
+    private static final class Entry {
+        final BufferedImage original;
+        volatile BufferedImage rotated;
+        volatile BufferedImage placeholder;
 
-    public Rectangle2D getBounds() {
-        if (finished) return null;
-        
-        if (frames != null) {
-            Image currentImage = frames.get(currentFrame);
-            return new Rectangle2D.Float(x, y, 
-                      currentImage.getWidth(null), 
-                      currentImage.getHeight(null));
-        } else {
-            // Dla GIF 
-            if (gif == null) return null;
-            return new Rectangle2D.Float(x, y, 
-                      gif.getWidth(null), 
-                      gif.getHeight(null));
+        Entry(BufferedImage original) {
+            this.original = original;
         }
     }
-}
 
+    private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Animacje (GIF) rozłożone na klatki - dekodowane raz
+    private static final Map<String, SpriteSheet> sheets = new ConcurrentHashMap<>();
 
-class ExplosionLoader {
-    public static List<Image> loadExplosionFrames(String basePath, int frameCount) {
-        List<Image> frames = new ArrayList<>();
-        for (int i = 1; i <= frameCount; i++) {
-            String path = basePath + "explosion" + i + ".png";
-            try {
-                Image img = ImageIO.read(ExplosionLoader.class.getResource(path));
-                frames.add(img);
-            } catch (IOException | IllegalArgumentException e) {
-                System.err.println("Nie udało się załadować klatki wybuchu: " + path);
-                e.printStackTrace();
-            }
-        }
-        return frames;
-    }
-}
+    // Katalog z obrazkami; pliki szukamy najpierw obok programu, potem tutaj
+    static final String ASSET_DIR = "Pictures";
 
-// Klasa reprezentująca ulepszenie
-class PowerUp {
-    float x, y;
-    int width, height;
-    Image image;
-    PowerUpType type;
-    float dy = 2; // Prędkość spadania
+    // Po wstępnym wczytaniu zasobów brakujące pliki nie są już szukane na dysku
+    private static volatile boolean sealed = false;
 
-    enum PowerUpType {
-        EXTRA_LIFE,
-        INCREASE_FIRE_RATE,
-        SHIELD
-    }
+    // Liczniki diagnostyczne
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong decodeNanos = new AtomicLong();
+    private static final AtomicLong variantNanos = new AtomicLong();
 
-    public PowerUp(float x, float y, PowerUpType type) {
-        this.x = x;
-        this.y = y;
-        this.type = type;
-        this.width = 30;
-        this.height = 30;
-        this.image = new ImageIcon(getImagePath()).getImage();
+    private SpriteCache() {
+    }
 
+    // Zwraca oryginalny obraz (albo null, jeśli pliku nie udało się wczytać)
+    static BufferedImage get(String path) {
+        return get(path, Variant.ORIGINAL);
     }
 
-    private String getImagePath() {
-        switch (type) {
-            case EXTRA_LIFE:
-                return "powerup_extra_life.png";
-            case INCREASE_FIRE_RATE:
-                return "powerup_fire_rate.png";
-            case SHIELD:
-                return "powerup_shield.png";
-            default:
-                return "powerup_default.png";
+    // Zwraca obraz w podanym wariancie (albo null, jeśli pliku nie udało się wczytać)
+    static BufferedImage get(String path, Variant variant) {
+        Entry entry = entry(path);
+        if (entry.original == null) {
+            return null;
+        }
+        if (variant == Variant.ORIGINAL) {
+            return entry.original;
         }
+        BufferedImage rotated = entry.rotated;
+        if (rotated == null) {
+            synchronized (entry) {
+                rotated = entry.rotated;
+                if (rotated == null) {
+                    SpriteDecodeEvent event = new SpriteDecodeEvent();
+                    event.begin();
+                    long start = System.nanoTime();
+                    rotated = rotateImage180(entry.original);
+                    variantNanos.addAndGet(System.nanoTime() - start);
+                    commit(event, path, "obrót 180", rotated);
+                    entry.rotated = rotated;
+                }
+            }
+        }
+        return rotated;
     }
 
-    // Ruch ulepszenia w dół ekranu
-    public void move() {
-        y += dy;
+    // Jak get(), ale zamiast null zwraca jednolitą zaślepkę w podanym kolorze
+    static BufferedImage getOrPlaceholder(String path, Variant variant, int w, int h, Color color) {
+        BufferedImage image = get(path, variant);
+        if (image != null) {
+            return image;
+        }
+        Entry entry = entries.get(path);
+        BufferedImage placeholder = entry.placeholder;
+        if (placeholder == null) {
+            synchronized (entry) {
+                placeholder = entry.placeholder;
+                if (placeholder == null) {
+                    placeholder = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+                    Graphics2D g2 = placeholder.createGraphics();
+                    g2.setColor(color);
+                    g2.fillRect(0, 0, w, h);
+                    g2.dispose();
+                    entry.placeholder = placeholder;
+                }
+            }
+        }
+        return placeholder;
     }
 
-    // Rysowanie ulepszenia
-    public void draw(Graphics2D g2d) {
-        g2d.drawImage(image, (int)x, (int)y, width, height, null);
+    static long hits() {
+        return hits.get();
     }
 
-    // Pobieranie hitboxa dla kolizji
-    public Shape getHitbox() {
-        return new Rectangle2D.Float(x, y, width, height);
+    static long misses() {
+        return misses.get();
     }
-}
 
-// Klasa do przechowywania konfiguracji poziomów
-class LevelConfig {
-    private List<List<Float>> planePositionsPerRow;
+    static long decodeNanos() {
+        return decodeNanos.get();
+    }
 
-    public LevelConfig(List<List<Float>> planePositionsPerRow) {
-        this.planePositionsPerRow = planePositionsPerRow;
+    static long variantNanos() {
+        return variantNanos.get();
     }
 
-    public List<List<Float>> getPlanePositionsPerRow() {
-        return planePositionsPerRow;
+    // Usuwa wszystkie wczytane obrazy (np. do pomiaru ładowania "na zimno")
+    static void clear() {
+        entries.clear();
+        sheets.clear();
     }
 
-    public int getRows() {
-        return planePositionsPerRow.size();
+    // Animacja (GIF) jako gotowe klatki - dekodowana raz i współdzielona.
+    // Jeśli pliku nie udało się wczytać - jedna przezroczysta klatka.
+    static SpriteSheet sheet(String path) {
+        SpriteSheet sheet = sheets.get(path);
+        if (sheet != null) {
+            hits.incrementAndGet();
+            return sheet;
+        }
+        return sheets.computeIfAbsent(path, SpriteCache::decodeSheet);
     }
 
-    public List<Float> getPlanePositionsInRow(int row) {
-        if (row >= 0 && row < planePositionsPerRow.size()) {
-            return planePositionsPerRow.get(row);
+    private static SpriteSheet decodeSheet(String path) {
+        misses.incrementAndGet();
+        if (sealed) {
+            System.err.println("Brak obrazu we wczytanych zasobach: " + path);
+            return SpriteSheet.empty();
         }
-        return new ArrayList<>();
+        SpriteDecodeEvent event = new SpriteDecodeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        SpriteSheet sheet;
+        try {
+            sheet = SpriteSheet.decodeGif(resolve(path));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Nie udało się załadować animacji: " + path);
+            e.printStackTrace();
+            sheet = SpriteSheet.empty();
+        }
+        decodeNanos.addAndGet(System.nanoTime() - start);
+        commit(event, path, "klatki", sheet.frame(0));
+        return sheet;
     }
-}
 
-// Klasa bazowa dla wszystkich wrogów
-abstract class EnemyPlane extends Rectangle2D.Float {
-    boolean isVisible = true;
-    Image image;  // Obraz samolotu
-    EnemyBulletType bulletType;
-    protected Plansza p;
+    // Od teraz wszystkie obrazy są w pamięci - brakujących plików nie szukamy na dysku
+    static void seal() {
+        sealed = true;
+    }
 
-    EnemyPlane(float x, float y, int w, int h, EnemyBulletType bulletType, Plansza p) {
-        super(x, y, w, h);
-        this.bulletType = bulletType;
-        this.p = p;
-        loadAndRotateImage(getImagePath());
+    // Plik obrazu: obok programu albo w katalogu ASSET_DIR
+    static File resolve(String path) {
+        File file = new File(path);
+        if (!file.exists()) {
+            File asset = new File(ASSET_DIR, path);
+            if (asset.exists()) {
+                return asset;
+            }
+        }
+        return file;
     }
 
-    protected abstract String getImagePath();
-    
+    static String stats() {
+        return String.format("SpriteCache: trafienia=%d, chybienia=%d, dekodowanie=%.1f ms, warianty=%.1f ms",
+                hits(), misses(), decodeNanos() / 1e6, variantNanos() / 1e6);
+    }
 
-    protected void loadAndRotateImage(String path) {
-        BufferedImage originalImage = loadImage(path);
-        if (originalImage != null) {
-            BufferedImage rotatedImage = rotateImage180(originalImage);
-            this.image = rotatedImage;
-        } else {
-            // Jeśli nie udało się załadować obrazu - tworzymy zaślepkę
-            this.image = new BufferedImage((int)width, (int)height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2d = ((BufferedImage) this.image).createGraphics();
-            g2d.setColor(Color.BLUE);
-            g2d.fillRect(0, 0, (int)width, (int)height);
-            g2d.dispose();
+    private static Entry entry(String path) {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry;
         }
+        return entries.computeIfAbsent(path, SpriteCache::decode);
     }
-    protected BufferedImage loadImage(String path) {
+
+    private static Entry decode(String path) {
+        misses.incrementAndGet();
+        if (sealed) {
+            System.err.println("Brak obrazu we wczytanych zasobach: " + path);
+            return new Entry(null);
+        }
+        SpriteDecodeEvent event = new SpriteDecodeEvent();
+        event.begin();
+        long start = System.nanoTime();
+        BufferedImage image = null;
         try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
+            image = ImageIO.read(resolve(path));
+            if (image == null) {
+                System.err.println("Nieobsługiwany format obrazu: " + path);
+            }
+        } catch (IOException e) {
             System.err.println("Nie udało się załadować obrazu: " + path);
             e.printStackTrace();
-            return null;
         }
+        decodeNanos.addAndGet(System.nanoTime() - start);
+        commit(event, path, "dekodowanie", image);
+        return new Entry(image);
     }
 
-    private BufferedImage rotateImage180(BufferedImage src) {
+    private static void commit(SpriteDecodeEvent event, String path, String operation, BufferedImage image) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.operation = operation;
+            event.width = image != null ? image.getWidth() : 0;
+            event.height = image != null ? image.getHeight() : 0;
+            event.commit();
+        }
+    }
+
+    private static BufferedImage rotateImage180(BufferedImage src) {
         AffineTransform transform = new AffineTransform();
         // Obrót o 180 stopni wokół środka obrazu
         transform.rotate(Math.toRadians(180), src.getWidth() / 2.0, src.getHeight() / 2.0);
         AffineTransformOp op = new AffineTransformOp(transform, AffineTransformOp.TYPE_BILINEAR);
-        BufferedImage rotated = op.filter(src, null);
-        return rotated;
+        return op.filter(src, null);
     }
+}
 
-    // Rysowanie samolotu
-    void draw(Graphics2D g2d) {
-        g2d.drawImage(image, (int) x, (int) y, (int) width, (int) height, null);
-    }
 
-    // Metoda do strzelania pociskami
-    public void shoot() {
-        float bulletStartX = this.x + this.width / 2f - 4;
-        float bulletStartY = this.y + this.height;
-        Bullet enemyBullet;
-        switch (bulletType) {
-            case TYPE1:
-                enemyBullet = new EnemyBulletType1(p, bulletStartX, bulletStartY);
-                break;
-            case TYPE2:
-                enemyBullet = new EnemyBulletType2(p, bulletStartX, bulletStartY);
-                break;
+// Klatki animacji zdekodowane raz (GIF rozłożony na pełne obrazy) wraz z czasem
+// wyświetlania każdej klatki. Numer klatki liczymy z czasu symulacji, więc animacja
+// nie potrzebuje własnego wątku ani licznika (jak ImageIcon).
+final class SpriteSheet {
+    // GIF bez podanego opóźnienia wyświetlamy jak przeglądarki - 100 ms na klatkę
+    private static final int DEFAULT_DELAY = 100;
 
-            case TYPE3:
-                enemyBullet = new EnemyBulletType3(p, bulletStartX, bulletStartY);
-                break;
-            case TYPE4:
-                enemyBullet = new EnemyBulletType4(p, bulletStartX, bulletStartY);
-                break;
-            default:
-                enemyBullet = new EnemyBulletType1(p, bulletStartX, bulletStartY);
-                break;
+    private final BufferedImage[] frames;
+    // Moment końca klatki i (suma opóźnień klatek 0..i) w ms
+    private final int[] frameEnds;
+    final int width;
+    final int height;
+
+    private SpriteSheet(BufferedImage[] frames, int[] delays, int width, int height) {
+        this.frames = frames;
+        this.frameEnds = new int[delays.length];
+        int end = 0;
+        for (int i = 0; i < delays.length; i++) {
+            end += delays[i];
+            frameEnds[i] = end;
         }
-        p.addBullet(enemyBullet);
+        this.width = width;
+        this.height = height;
     }
 
-}
-
-// Klasa reprezentująca bossa
-abstract class BossPlane extends EnemyPlane {
-    int health;
+    static SpriteSheet empty() {
+        return new SpriteSheet(new BufferedImage[]{new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)},
+                new int[]{DEFAULT_DELAY}, 0, 0);
+    }
 
-    BossPlane(float x, float y, int w, int h, int health, EnemyBulletType bulletType, Plansza p) {
-        super(x, y, w, h, bulletType, p);
-        this.health = health;
+    int frameCount() {
+        return frames.length;
     }
 
+    BufferedImage frame(int index) {
+        return frames[index];
+    }
 
-    protected abstract String getImagePath();
+    // Czas jednego przebiegu animacji w ms
+    int duration() {
+        return frameEnds[frameEnds.length - 1];
+    }
 
-   
-    void draw(Graphics2D g2d) {
-        super.draw(g2d);
-        // Rysowanie paska zdrowia bossa nad nim
-        g2d.setColor(Color.RED);
-        g2d.fillRect((int) x, (int) (y - 10), (int) width, 5);
-        g2d.setColor(Color.GREEN);
-        double healthRatio = Math.max(0, (double) health / getMaxHealth());
-        g2d.fillRect((int) x, (int) (y - 10), (int) (width * healthRatio), 5);
+    // Klatka wyświetlana po elapsedMillis od startu (animacja się zapętla jak GIF)
+    BufferedImage frameAt(long elapsedMillis) {
+        int t = (int) (Math.max(0, elapsedMillis) % duration());
+        int i = 0;
+        while (frameEnds[i] <= t) {
+            i++;
+        }
+        return frames[i];
     }
 
-    protected abstract int getMaxHealth();
+    // Składa klatki GIF-a na pełnym płótnie z uwzględnieniem pozycji i sposobu usuwania klatek
+    static SpriteSheet decodeGif(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Nie można otworzyć pliku: " + file);
+            }
+            ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+            try {
+                reader.setInput(in, false);
+                IIOMetadataNode screen = child((IIOMetadataNode) reader.getStreamMetadata()
+                        .getAsTree("javax_imageio_gif_stream_1.0"), "LogicalScreenDescriptor");
+                int width = screen != null ? Integer.parseInt(screen.getAttribute("logicalScreenWidth")) : 0;
+                int height = screen != null ? Integer.parseInt(screen.getAttribute("logicalScreenHeight")) : 0;
+
+                List<BufferedImage> frames = new ArrayList<>();
+                List<Integer> delays = new ArrayList<>();
+                BufferedImage canvas = null;
+                for (int i = 0; ; i++) {
+                    BufferedImage raw;
+                    try {
+                        raw = reader.read(i);
+                    } catch (IndexOutOfBoundsException e) {
+                        break;
+                    }
+                    IIOMetadataNode meta = (IIOMetadataNode) reader.getImageMetadata(i)
+                            .getAsTree("javax_imageio_gif_image_1.0");
+                    IIOMetadataNode descriptor = child(meta, "ImageDescriptor");
+                    IIOMetadataNode control = child(meta, "GraphicControlExtension");
+                    int left = descriptor != null ? Integer.parseInt(descriptor.getAttribute("imageLeftPosition")) : 0;
+                    int top = descriptor != null ? Integer.parseInt(descriptor.getAttribute("imageTopPosition")) : 0;
+                    String disposal = control != null ? control.getAttribute("disposalMethod") : "none";
+                    int delay = control != null ? Integer.parseInt(control.getAttribute("delayTime")) * 10 : 0;
+
+                    if (canvas == null) {
+                        width = Math.max(width, left + raw.getWidth());
+                        height = Math.max(height, top + raw.getHeight());
+                        canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                    }
+                    BufferedImage previous = "restoreToPrevious".equals(disposal) ? copy(canvas) : null;
+                    Graphics2D g2 = canvas.createGraphics();
+                    g2.drawImage(raw, left, top, null);
+                    g2.dispose();
+                    frames.add(copy(canvas));
+                    delays.add(delay > 0 ? delay : DEFAULT_DELAY);
+
+                    // Przygotowanie płótna pod następną klatkę
+                    if ("restoreToBackgroundColor".equals(disposal)) {
+                        g2 = canvas.createGraphics();
+                        g2.setComposite(AlphaComposite.Clear);
+                        g2.fillRect(left, top, raw.getWidth(), raw.getHeight());
+                        g2.dispose();
+                    } else if (previous != null) {
+                        canvas = previous;
+                    }
+                }
+                if (frames.isEmpty()) {
+                    throw new IOException("Brak klatek w pliku: " + file);
+                }
+                int[] delayArray = new int[delays.size()];
+                for (int i = 0; i < delayArray.length; i++) {
+                    delayArray[i] = delays.get(i);
+                }
+                return new SpriteSheet(frames.toArray(new BufferedImage[0]), delayArray, width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 
-    public void takeDamage(int damage) {
-        health -= damage;
-        if (health <= 0) {
-            isVisible = false;
+    private static IIOMetadataNode child(IIOMetadataNode node, String name) {
+        for (org.w3c.dom.Node n = node.getFirstChild(); n != null; n = n.getNextSibling()) {
+            if (name.equals(n.getNodeName())) {
+                return (IIOMetadataNode) n;
+            }
         }
+        return null;
+    }
+
+    private static BufferedImage copy(BufferedImage src) {
+        BufferedImage copy = new BufferedImage(src.getWidth(), src.getHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = copy.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.drawImage(src, 0, 0, null);
+        g2.dispose();
+        return copy;
     }
 }
 
-// Boss typu 1
-class BossType1 extends BossPlane {
-    public BossType1(float x, float y, Plansza p) {
-        super(x, y, 250, 150, 200, EnemyBulletType.TYPE1, p);
+// Sprite'y przeskalowane raz do rozmiaru, w jakim są rysowane, i zapisane w formacie
+// zgodnym z ekranem (GraphicsConfiguration.createCompatibleImage). W każdej klatce są
+// tylko kopiowane, bez skalowania i konwersji formatu. Pamięć jest czyszczona po zmianie
+// rozmiaru planszy (invalidate) albo gdy rysujemy na innym ekranie (inna konfiguracja).
+final class DisplaySprites {
+    // Warianty jednego obrazu źródłowego: [i] -> obraz w rozmiarze widths[i] x heights[i]
+    private static final class Entry {
+        Image[] images = new Image[0];
+        int[] widths = new int[0];
+        int[] heights = new int[0];
     }
 
+    private static final Map<Image, Entry> entries = new IdentityHashMap<>();
+    private static GraphicsConfiguration config;
+    private static volatile boolean invalid = false;
+    private static long builds = 0;
 
-    protected String getImagePath() {
-        return "boss1.png";
+    private DisplaySprites() {
     }
 
+    // Zlecenie przebudowy (np. po zmianie rozmiaru okna)
+    static void invalidate() {
+        invalid = true;
+    }
 
-    protected int getMaxHealth() {
-        return 200;
+    // Liczba utworzonych obrazów (do raportu testu obciążeniowego)
+    static synchronized long builds() {
+        return builds;
     }
-}
 
-// Boss typu 2
-class BossType2 extends BossPlane {
-    public BossType2(float x, float y, Plansza p) {
-        super(x, y, 300, 180, 300, EnemyBulletType.TYPE2, p);
+    // Rysuje obraz w rozmiarze w x h bez skalowania w czasie klatki
+    static void draw(Graphics2D g2d, Image image, int x, int y, int w, int h) {
+        if (image == null) return;
+        Image sprite = get(g2d.getDeviceConfiguration(), image, w, h);
+        if (sprite == null) {
+            g2d.drawImage(image, x, y, w, h, null);
+        } else {
+            g2d.drawImage(sprite, x, y, null);
+        }
     }
 
+    // Obraz w rozmiarze w x h dla podanej konfiguracji (null, jeśli nie da się go utworzyć)
+    static synchronized Image get(GraphicsConfiguration gc, Image image, int w, int h) {
+        if (gc == null || w <= 0 || h <= 0) return null;
+        if (invalid || gc != config) {
+            entries.clear();
+            config = gc;
+            invalid = false;
+        }
+        Entry entry = entries.get(image);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(image, entry);
+        }
+        for (int i = 0; i < entry.images.length; i++) {
+            if (entry.widths[i] == w && entry.heights[i] == h) {
+                return entry.images[i];
+            }
+        }
+
+        int transparency = image instanceof BufferedImage
+                ? ((BufferedImage) image).getTransparency()
+                : Transparency.TRANSLUCENT;
+        BufferedImage sprite = gc.createCompatibleImage(w, h, transparency);
+        Graphics2D g2 = sprite.createGraphics();
+        g2.setComposite(AlphaComposite.Src);
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(image, 0, 0, w, h, null);
+        g2.dispose();
+        builds++;
+
+        int n = entry.images.length;
+        entry.images = Arrays.copyOf(entry.images, n + 1);
+        entry.widths = Arrays.copyOf(entry.widths, n + 1);
+        entry.heights = Arrays.copyOf(entry.heights, n + 1);
+        entry.images[n] = sprite;
+        entry.widths[n] = w;
+        entry.heights[n] = h;
+        return sprite;
+    }
+}
 
-    protected String getImagePath() {
-        return "boss.png";
+// Brudne regiony klatki na siatce kafelków TILE x TILE. W trybie aktywnym tylny bufor
+// zachowuje poprzednią klatkę, więc tło odtwarzamy tylko na kafelkach zajętych przez
+// sprite'y w poprzedniej lub bieżącej klatce - reszta ekranu zostaje bez zmian.
+final class DirtyTiles {
+    static final int TILE = 32;
+
+    private int width, height;
+    private int cols, rows;
+    // Kafelki pokryte w poprzedniej i w bieżącej klatce
+    private boolean[] previous = new boolean[0];
+    private boolean[] current = new boolean[0];
+
+    // Ustawia rozmiar klatki; zwraca true, jeśli się zmienił (trzeba narysować całość)
+    boolean resize(int w, int h) {
+        if (w == width && h == height) return false;
+        width = w;
+        height = h;
+        cols = Math.max(1, (w + TILE - 1) / TILE);
+        rows = Math.max(1, (h + TILE - 1) / TILE);
+        previous = new boolean[cols * rows];
+        current = new boolean[cols * rows];
+        return true;
     }
 
+    // Zaznacza prostokąt rysowany w bieżącej klatce (z marginesem na zaokrąglenia)
+    void mark(int x, int y, int w, int h) {
+        if (x + w < 0 || y + h < 0) return;
+        int c0 = Math.max(0, (x - 1) / TILE);
+        int r0 = Math.max(0, (y - 1) / TILE);
+        int c1 = Math.min(cols - 1, (x + w + 1) / TILE);
+        int r1 = Math.min(rows - 1, (y + h + 1) / TILE);
+        for (int r = r0; r <= r1; r++) {
+            int row = r * cols;
+            for (int c = c0; c <= c1; c++) {
+                current[row + c] = true;
+            }
+        }
+    }
 
-    protected int getMaxHealth() {
-        return 300;
+    // Odsetek kafelków do odtworzenia (poprzednia lub bieżąca klatka)
+    float dirtyFraction() {
+        int dirty = 0;
+        for (int i = 0; i < current.length; i++) {
+            if (previous[i] || current[i]) dirty++;
+        }
+        return current.length == 0 ? 1f : (float) dirty / current.length;
     }
-}
 
-// Wrogowie typu 1
-class EnemyType1 extends EnemyPlane {
-    public EnemyType1(float x, float y, Plansza p) {
-        super(x, y, 40, 30, EnemyBulletType.TYPE1, p);
+    // Odtwarza tło na brudnych kafelkach; sąsiednie kafelki w wierszu łączymy w jeden prostokąt.
+    // Bez tła (brak obrazu) zamalowujemy kolorem fill.
+    void restore(Graphics g, Image background, Color fill) {
+        if (background == null) {
+            g.setColor(fill);
+        }
+        for (int r = 0; r < rows; r++) {
+            int row = r * cols;
+            int y0 = r * TILE;
+            int y1 = Math.min(y0 + TILE, height);
+            int c = 0;
+            while (c < cols) {
+                if (!(previous[row + c] || current[row + c])) {
+                    c++;
+                    continue;
+                }
+                int start = c;
+                while (c < cols && (previous[row + c] || current[row + c])) {
+                    c++;
+                }
+                int x0 = start * TILE;
+                int x1 = Math.min(c * TILE, width);
+                if (background == null) {
+                    g.fillRect(x0, y0, x1 - x0, y1 - y0);
+                } else {
+                    g.drawImage(background, x0, y0, x1, y1, x0, y0, x1, y1, null);
+                }
+            }
+        }
     }
 
-    protected String getImagePath() {
-        return "mob_small.png";
+    // Koniec klatki: bieżące pokrycie staje się poprzednim
+    void endFrame() {
+        boolean[] swap = previous;
+        previous = current;
+        current = swap;
+        Arrays.fill(current, false);
     }
 }
 
-// Wrogowie typu 2
-class EnemyType2 extends EnemyPlane {
-    public EnemyType2(float x, float y, Plansza p) {
-        super(x, y, 50, 35, EnemyBulletType.TYPE2, p);
+// Warstwa HUD: punkty, poziom i życia w jednym obrazie, który jest rysowany od nowa tylko
+// wtedy, gdy zmieni się któraś z wartości albo szerokość planszy. Cyfry i napisy są
+// wcześniej wyrenderowanymi glifami, więc także przerysowanie nie tworzy napisów ani czcionek.
+final class HudLayer {
+    static final int HEIGHT = 45;
+    static final int HEART_WIDTH = 50;
+    static final int HEART_HEIGHT = 28;
+    private static final Font FONT = new Font("Arial", Font.BOLD, 16);
+
+    // Glify: [0..9] cyfry, potem "Punkty: ", "Poziom: ", "x "
+    private static final int SCORE_LABEL = 10;
+    private static final int LEVEL_LABEL = 11;
+    private static final int LIVES_LABEL = 12;
+    private static final String[] GLYPH_TEXT = {
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "Punkty: ", "Poziom: ", "x "
+    };
+
+    private BufferedImage[] glyphs;
+    private int[] advances;
+    private int ascent;
+    private BufferedImage image;
+    private final int[] digits = new int[10];
+    private int shownScore = -1, shownLevel = -1, shownLives = -1, shownWidth = -1;
+    // Zajęte fragmenty obrazu: lewy [0, leftEnd) i prawy [rightStart, szerokość)
+    private int leftEnd, rightStart;
+    private long renders;
+
+    // Aktualizuje obraz HUD, jeśli wartości się zmieniły
+    void update(int score, int level, int lives, int width, Image heart, GraphicsConfiguration gc) {
+        if (width <= 0) return;
+        score = Math.max(0, score);
+        level = Math.max(0, level);
+        lives = Math.max(0, lives);
+        if (score == shownScore && level == shownLevel && lives == shownLives && width == shownWidth && image != null) {
+            return;
+        }
+        if (glyphs == null) {
+            createGlyphs();
+        }
+        if (image == null || width != shownWidth) {
+            image = gc != null
+                    ? gc.createCompatibleImage(width, HEIGHT, Transparency.TRANSLUCENT)
+                    : new BufferedImage(width, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        Graphics2D g2 = image.createGraphics();
+        g2.setComposite(AlphaComposite.Clear);
+        g2.fillRect(0, 0, width, HEIGHT);
+        g2.setComposite(AlphaComposite.SrcOver);
+
+        // Punkty i poziom - linie bazowe 20 i 40
+        int scoreEnd = drawNumber(g2, drawGlyph(g2, SCORE_LABEL, 10, 20), 20, score);
+        int levelEnd = drawNumber(g2, drawGlyph(g2, LEVEL_LABEL, 10, 40), 40, level);
+        leftEnd = Math.min(width, Math.max(scoreEnd, levelEnd) + 2);
+
+        // Serduszko w prawym górnym rogu i liczba żyć obok niego
+        int heartX = width - HEART_WIDTH - 50;
+        int heartY = 10;
+        if (heart != null) {
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2.drawImage(heart, heartX, heartY, HEART_WIDTH, HEART_HEIGHT, null);
+        }
+        int textY = heartY + HEART_HEIGHT / 2 + 5;
+        drawNumber(g2, drawGlyph(g2, LIVES_LABEL, heartX - 20, textY), textY, lives);
+        g2.dispose();
+        rightStart = Math.max(0, heartX - 20);
+
+        shownScore = score;
+        shownLevel = level;
+        shownLives = lives;
+        shownWidth = width;
+        renders++;
     }
 
-    protected String getImagePath() {
-        return "mob2.png";
+    // Kopiujemy tylko zajęte fragmenty, a nie cały pas o szerokości planszy
+    void draw(Graphics g) {
+        if (image == null) return;
+        g.drawImage(image, 0, 0, leftEnd, HEIGHT, 0, 0, leftEnd, HEIGHT, null);
+        if (rightStart < shownWidth) {
+            g.drawImage(image, rightStart, 0, shownWidth, HEIGHT, rightStart, 0, shownWidth, HEIGHT, null);
+        }
     }
-}
 
-// Wrogowie typu 3
-class EnemyType3 extends EnemyPlane {
-    public EnemyType3(float x, float y, Plansza p) {
-        super(x, y, 45, 32, EnemyBulletType.TYPE3, p);
+    // Zaznacza zajęte fragmenty HUD jako brudne kafelki
+    void mark(DirtyTiles tiles) {
+        if (image == null) return;
+        tiles.mark(0, 0, leftEnd, HEIGHT);
+        tiles.mark(rightStart, 0, shownWidth - rightStart, HEIGHT);
     }
 
-    protected String getImagePath() {
-        return "mob3.png";
+    // Liczba przerysowań HUD (nakładka profilera)
+    long renders() {
+        return renders;
     }
-}
 
-// Wrogowie typu 4
-class EnemyType4 extends EnemyPlane {
-    public EnemyType4(float x, float y, Plansza p) {
-        super(x, y, 55, 40, EnemyBulletType.TYPE4, p);
+    private void createGlyphs() {
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D sg = scratch.createGraphics();
+        FontMetrics fm = sg.getFontMetrics(FONT);
+        sg.dispose();
+        ascent = fm.getAscent();
+        int glyphHeight = ascent + fm.getDescent();
+        glyphs = new BufferedImage[GLYPH_TEXT.length];
+        advances = new int[GLYPH_TEXT.length];
+        for (int i = 0; i < GLYPH_TEXT.length; i++) {
+            advances[i] = fm.stringWidth(GLYPH_TEXT[i]);
+            BufferedImage glyph = new BufferedImage(Math.max(1, advances[i] + 2), glyphHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = glyph.createGraphics();
+            g2.setFont(FONT);
+            g2.setColor(Color.BLACK);
+            g2.drawString(GLYPH_TEXT[i], 0, ascent);
+            g2.dispose();
+            glyphs[i] = glyph;
+        }
+    }
+
+    // Rysuje glif z linią bazową baseline; zwraca x za glifem
+    private int drawGlyph(Graphics2D g2, int glyph, int x, int baseline) {
+        g2.drawImage(glyphs[glyph], x, baseline - ascent, null);
+        return x + advances[glyph];
     }
 
-    protected String getImagePath() {
-        return "mob4.png";
+    // Rysuje liczbę nieujemną cyfra po cyfrze; zwraca x za ostatnią cyfrą
+    private int drawNumber(Graphics2D g2, int x, int baseline, int value) {
+        int count = 0;
+        do {
+            digits[count++] = value % 10;
+            value /= 10;
+        } while (value > 0);
+        for (int i = count - 1; i >= 0; i--) {
+            x = drawGlyph(g2, digits[i], x, baseline);
+        }
+        return x;
     }
 }
 
-// Klasa reprezentująca statek gracza
-class Belka {
-    float x, y;
-    int width;
-    int height;
-    Image imageRight;
-    Image imageLeft;
-    Image imageStand;
-    Image currentImage;
-    private boolean invulnerable = false; 
-    private long invulEndTime = 0; 
 
+abstract class Bullet {
+    protected GameWorld world;
+    protected float x, y;
+    protected float prevX, prevY; // pozycja z poprzedniego ticka (do interpolacji)
+    protected float dx, dy;
+    protected float spawnDx, spawnDy; // prędkość początkowa (przywracana przy ponownym użyciu)
+    protected BulletOwner owner;
+    // false = pocisk usunięty, czeka na zwrot do puli
+    boolean alive = true;
+    protected Image image;
+    // Hitbox pocisku to prostokąt (x, y, width, height) - bez osobnego obiektu Shape
+    protected int width, height;
 
-    // Dokładny hitbox
-    Shape hitbox;
-    
-    private boolean shieldActive = false;
-    private long shieldEndTime = 0;
+    public Bullet(GameWorld world, float startX, float startY, float dx, float dy, BulletOwner owner, Image image) {
+        this.world = world;
+        this.x = startX;
+        this.y = startY;
+        this.prevX = startX;
+        this.prevY = startY;
+        this.dx = dx;
+        this.dy = dy;
+        this.spawnDx = dx;
+        this.spawnDy = dy;
+        this.owner = owner;
+        this.image = image;
+        // Szerokość/wysokość są inicjalizowane już w klasach pochodnych.
+    }
 
-    // Metoda do aktywacji tarczy
-    public void activateShield() {
-        shieldActive = true;
-        shieldEndTime = System.currentTimeMillis() + 5000; // Tarcza aktywna przez 5 sekund
+    // Ponowne użycie pocisku z puli w nowym miejscu
+    void reset(float startX, float startY) {
+        x = startX;
+        y = startY;
+        prevX = startX;
+        prevY = startY;
+        dx = spawnDx;
+        dy = spawnDy;
+        alive = true;
     }
 
-    // Metoda do dezaktywacji tarczy
-    public void deactivateShield() {
-        shieldActive = false;
+    // Zmiana prędkości (np. pociski bossów lecące pod kątem); ponowne użycie z puli przywraca domyślną
+    Bullet setVelocity(float dx, float dy) {
+        this.dx = dx;
+        this.dy = dy;
+        return this;
     }
 
-    // Metoda do sprawdzania statusu tarczy
-    public boolean isShieldActive() {
-        return shieldActive;
+    // Rodzaj pocisku (indeks puli w BulletStore)
+    protected abstract int kind();
+
+    // Cel trafienia w bieżącym stanie świata (-1 - brak), bez skutków ubocznych.
+    // Czyta tylko stan, który w czasie ruchu pocisków się nie zmienia, więc może działać równolegle.
+    protected abstract int detect();
+
+    // Skutki trafienia celu wskazanego przez detect()
+    protected abstract void hit(int target);
+
+    // Czy cel wykryty na początku ticka jest nadal aktualny (nikt go wcześniej nie zniszczył)
+    protected boolean stillHits(int target) {
+        return true;
     }
 
-    // Aktualizacja stanu tarczy (można wywoływać z metod ruchu lub timerów)
-    public void updateShield() {
-        if (shieldActive && System.currentTimeMillis() > shieldEndTime) {
-            deactivateShield();
+    // Sprawdzanie kolizji
+    protected void checkCollision() {
+        int target = detect();
+        if (target >= 0) {
+            hit(target);
         }
     }
 
-    Belka(float x, float y) {
-        this.x = x;
-        this.y = y;
-        this.width = 70;
-        this.height = 70;
 
-        this.imageRight = new ImageIcon("planeUserRight.png").getImage();
-        this.imageLeft = new ImageIcon("planeUserLeft.png").getImage();
-        this.imageStand = new ImageIcon("planeUserStand.png").getImage();
-        this.currentImage = imageStand;
-
-        // Tworzymy początkowy Polygon (umowny kształt statku)
-        Polygon p = new Polygon();
-        p.addPoint(10, 0);   // Górny punkt
-        p.addPoint(60, 35);  // Prawy róg
-        p.addPoint(10, 70);  // Dolny punkt
+    // Przesunięcie o jeden tick (bez kolizji)
+    void advance() {
+        prevX = x;
+        prevY = y;
+        x += dx * world.motionScale;
+        y += dy * world.motionScale;
+    }
 
-        // Przesunięcie (x, y)
-        AffineTransform tx = AffineTransform.getTranslateInstance(x, y);
-        hitbox = tx.createTransformedShape(p);
+    // Kolizje po przesunięciu; pocisk poza ekranem jest usuwany
+    void collide() {
+        checkCollision();
+        removeIfOutside();
+    }
+
+    // Jeśli pocisk wyleciał poza ekran - usuwamy go
+    void removeIfOutside() {
+        if (y < 0 || y > world.height || x < 0 - width || x > world.width + width) {
+            world.removeBullet(this);
+        }
+    }
+
+}
+
+
+
+// Dokładne testy kolizji na liczbach (bez tworzenia obiektów Shape/Area).
+// Wyniki są takie same jak dla Rectangle2D.intersects i przecięcia obiektów Area:
+// samo stykanie się krawędziami nie jest kolizją.
+final class Collision {
+    private Collision() {
+    }
+
+    // Prostokąt A kontra prostokąt B (jak Rectangle2D.intersects)
+    static boolean rectsIntersect(double ax, double ay, double aw, double ah,
+                                  double bx, double by, double bw, double bh) {
+        if (aw <= 0 || ah <= 0 || bw <= 0 || bh <= 0) {
+            return false;
+        }
+        return bx + bw > ax && by + bh > ay && bx < ax + aw && by < ay + ah;
+    }
+
+    // Trójkąt (x1,y1)-(x2,y2)-(x3,y3) kontra prostokąt - test osi rozdzielających (SAT).
+    // Kolizja tylko wtedy, gdy wnętrza mają wspólne pole (tak jak niepuste przecięcie Area).
+    static boolean triangleIntersectsRect(double x1, double y1, double x2, double y2, double x3, double y3,
+                                          double rx, double ry, double rw, double rh) {
+        if (rw <= 0 || rh <= 0) {
+            return false;
+        }
+        double rMaxX = rx + rw;
+        double rMaxY = ry + rh;
+        // Osie prostokąta (X i Y)
+        if (Math.max(x1, Math.max(x2, x3)) <= rx || Math.min(x1, Math.min(x2, x3)) >= rMaxX) {
+            return false;
+        }
+        if (Math.max(y1, Math.max(y2, y3)) <= ry || Math.min(y1, Math.min(y2, y3)) >= rMaxY) {
+            return false;
+        }
+        // Normalne krawędzi trójkąta
+        return !separatedByEdge(x1, y1, x2, y2, x3, y3, rx, ry, rMaxX, rMaxY)
+                && !separatedByEdge(x2, y2, x3, y3, x1, y1, rx, ry, rMaxX, rMaxY)
+                && !separatedByEdge(x3, y3, x1, y1, x2, y2, rx, ry, rMaxX, rMaxY);
+    }
+
+    // Czy prosta przez krawędź (ax,ay)-(bx,by) oddziela prostokąt od trzeciego wierzchołka (cx,cy)
+    private static boolean separatedByEdge(double ax, double ay, double bx, double by, double cx, double cy,
+                                           double rx, double ry, double rMaxX, double rMaxY) {
+        double nx = ay - by;
+        double ny = bx - ax;
+        double edge = nx * ax + ny * ay;
+        // Zwrot normalnej na zewnątrz trójkąta
+        if (nx * cx + ny * cy > edge) {
+            nx = -nx;
+            ny = -ny;
+            edge = -edge;
+        }
+        // Najmniejszy rzut prostokąta na normalną - jeśli nie mniejszy niż krawędź, są rozdzieleni
+        double minProj = (nx >= 0 ? nx * rx : nx * rMaxX) + (ny >= 0 ? ny * ry : ny * rMaxY);
+        return minProj >= edge;
+    }
+}
+
+// Magazyn pocisków z pulą obiektów.
+// Usunięte pociski są tylko oznaczane (alive = false), a raz na tick compact() usuwa je
+// z tablicy jednym przejściem (z zachowaniem kolejności) i oddaje do puli swojego rodzaju.
+// Nowe pociski są w pierwszej kolejności brane z puli.
+final class BulletStore {
+    static final int KIND_PLAYER = 0;
+    static final int KIND_ENEMY_1 = 1;
+    static final int KIND_ENEMY_2 = 2;
+    static final int KIND_ENEMY_3 = 3;
+    static final int KIND_ENEMY_4 = 4;
+    private static final int KINDS = 5;
+    // Górny limit pojedynczej puli - nadmiarowe pociski zostawiamy dla GC
+    private static final int MAX_POOL_SIZE = 4096;
+
+    private final GameWorld world;
+    private Bullet[] items = new Bullet[256];
+    private int count;
+    private int deadCount;
+
+    private final Bullet[][] pools = new Bullet[KINDS][64];
+    private final int[] poolSizes = new int[KINDS];
+
+    // Metryki
+    private long spawned;
+    private long despawned;
+    private long allocated;
+    private int highWater;
+    private long rateSampleNanos = System.nanoTime();
+    private long rateSampleSpawned;
+    private long rateSampleDespawned;
+    private double spawnRate;
+    private double despawnRate;
+
+    BulletStore(GameWorld world) {
+        this.world = world;
+    }
+
+    // Liczba pocisków w tablicy (razem z oznaczonymi do usunięcia)
+    int size() {
+        return count;
+    }
+
+    // Pocisk pod indeksem i; przed użyciem należy sprawdzić pole alive
+    Bullet get(int i) {
+        return items[i];
+    }
+
+    // Liczba żywych pocisków
+    int liveCount() {
+        return count - deadCount;
+    }
+
+    // Kopia żywych pocisków do migawki (obraz, pozycje do interpolacji, rozmiar)
+    void capture(WorldSnapshot s) {
+        s.reserveBullets(liveCount());
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            Bullet b = items[i];
+            if (!b.alive) continue;
+            s.bulletImage[n] = b.image;
+            s.bulletPrevX[n] = b.prevX;
+            s.bulletPrevY[n] = b.prevY;
+            s.bulletX[n] = b.x;
+            s.bulletY[n] = b.y;
+            s.bulletWidth[n] = b.width;
+            s.bulletHeight[n] = b.height;
+            n++;
+        }
+        s.bulletCount = n;
+    }
+
+    // Pociski dodajemy tylko przez spawnPlayer()/spawnEnemy(), które biorą je z puli
+    private void add(Bullet b) {
+        if (count == items.length) {
+            items = Arrays.copyOf(items, count * 2);
+        }
+        items[count++] = b;
+        spawned++;
+        if (count - deadCount > highWater) {
+            highWater = count - deadCount;
+        }
+    }
+
+    PlayerBullet spawnPlayer(float x, float y) {
+        Bullet b = take(KIND_PLAYER, x, y);
+        if (b == null) {
+            b = new PlayerBullet(world, x, y);
+            allocated++;
+        }
+        add(b);
+        return (PlayerBullet) b;
+    }
+
+    Bullet spawnEnemy(EnemyBulletType type, float x, float y) {
+        int kind = KIND_ENEMY_1 + type.ordinal();
+        Bullet b = take(kind, x, y);
+        if (b == null) {
+            switch (type) {
+                case TYPE2:
+                    b = new EnemyBulletType2(world, x, y);
+                    break;
+                case TYPE3:
+                    b = new EnemyBulletType3(world, x, y);
+                    break;
+                case TYPE4:
+                    b = new EnemyBulletType4(world, x, y);
+                    break;
+                default:
+                    b = new EnemyBulletType1(world, x, y);
+                    break;
+            }
+            allocated++;
+        }
+        add(b);
+        return b;
+    }
+
+    // Oznacza pocisk do usunięcia (O(1)); faktyczne usunięcie w compact()
+    void remove(Bullet b) {
+        if (b.alive) {
+            b.alive = false;
+            deadCount++;
+            despawned++;
+        }
+    }
+
+    // Usuwa oznaczone pociski jednym przejściem i zwraca je do pul
+    void compact() {
+        if (deadCount == 0) return;
+        int w = 0;
+        for (int i = 0; i < count; i++) {
+            Bullet b = items[i];
+            if (b.alive) {
+                items[w++] = b;
+            } else {
+                release(b);
+            }
+        }
+        Arrays.fill(items, w, count, null);
+        count = w;
+        deadCount = 0;
+    }
+
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            remove(items[i]);
+        }
+        compact();
+    }
+
+    private Bullet take(int kind, float x, float y) {
+        int n = poolSizes[kind];
+        if (n == 0) return null;
+        Bullet b = pools[kind][--n];
+        pools[kind][n] = null;
+        poolSizes[kind] = n;
+        b.reset(x, y);
+        return b;
+    }
+
+    private void release(Bullet b) {
+        int kind = b.kind();
+        int n = poolSizes[kind];
+        if (n == MAX_POOL_SIZE) return;
+        if (n == pools[kind].length) {
+            pools[kind] = Arrays.copyOf(pools[kind], n * 2);
+        }
+        pools[kind][n] = b;
+        poolSizes[kind] = n + 1;
+    }
+
+    // Metryki
+
+    long spawned() {
+        return spawned;
+    }
+
+    long despawned() {
+        return despawned;
+    }
+
+    // Ile pocisków trzeba było utworzyć, bo pula była pusta
+    long allocated() {
+        return allocated;
+    }
+
+    int pooled() {
+        int total = 0;
+        for (int n : poolSizes) {
+            total += n;
+        }
+        return total;
+    }
+
+    // Przelicza tempo tworzenia/usuwania pocisków (na sekundę) od poprzedniego próbkowania
+    void sampleRates() {
+        long now = System.nanoTime();
+        double seconds = (now - rateSampleNanos) / 1e9;
+        if (seconds <= 0) return;
+        spawnRate = (spawned - rateSampleSpawned) / seconds;
+        despawnRate = (despawned - rateSampleDespawned) / seconds;
+        rateSampleNanos = now;
+        rateSampleSpawned = spawned;
+        rateSampleDespawned = despawned;
+    }
+
+    // Podsumowanie metryk (wypisywane po końcu gry)
+    String metrics() {
+        return String.format("Pociski: żywe=%d, maks=%d, w puli=%d, utworzone=%d, wystrzelone=%d (%.1f/s), usunięte=%d (%.1f/s)",
+                liveCount(), highWater, pooled(), allocated, spawned, spawnRate, despawned, despawnRate);
+    }
+}
+
+
+// Równoległy ruch i wykrywanie kolizji pocisków w puli fork-join. Pociski dzielimy na zakresy
+// indeksów; każde zadanie przesuwa swoje pociski i zapisuje cel, w który trafiły (detect() nie
+// zmienia świata). Skutki trafień (zniszczenie wroga, punkty, wybuchy, trafienie gracza) stosujemy
+// potem w wątku symulacji w kolejności pocisków, więc wynik jest taki sam jak sekwencyjnie -
+// także dla powtórek. Przy małej liczbie pocisków koszt podziału jest większy od zysku,
+// więc liczymy sekwencyjnie.
+final class BulletStage {
+    // Od tylu pocisków (razem z usuniętymi w tym ticku) pracujemy równolegle
+    static final int PARALLEL_THRESHOLD = 1024;
+    // Najmniejszy zakres pocisków jednego zadania
+    private static final int CHUNK = 256;
+
+    // Pula wspólna dla wszystkich światów, tworzona przy pierwszym użyciu (wątki demony)
+    private static ForkJoinPool pool;
+
+    private final GameWorld world;
+    private boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+    // Cel trafienia wykryty dla pocisku o danym indeksie w BulletStore (-1 - brak)
+    private int[] targets = new int[CHUNK];
+    private long parallelTicks;
+
+    BulletStage(GameWorld world) {
+        this.world = world;
+    }
+
+    void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    boolean isParallel() {
+        return parallel;
+    }
+
+    // Liczba ticków policzonych równolegle (do raportu testu obciążeniowego)
+    long parallelTicks() {
+        return parallelTicks;
+    }
+
+    // Ruch pocisków i wykrycie trafień; zwraca true, jeśli policzono je równolegle
+    // (wtedy trafienia trzeba zastosować przez merge(), w przeciwnym razie przez collideAll())
+    boolean advance() {
+        BulletStore bullets = world.bullets;
+        int n = bullets.size();
+        if (!parallel || n < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < n; i++) {
+                Bullet bullet = bullets.get(i);
+                if (bullet.alive) {
+                    bullet.advance();
+                }
+            }
+            return false;
+        }
+        if (targets.length < n) {
+            targets = new int[Math.max(n, targets.length * 2)];
+        }
+        pool().invoke(new Range(bullets, targets, 0, n));
+        parallelTicks++;
+        return true;
+    }
+
+    // Kolizje pocisk po pocisku (tryb sekwencyjny). Liczymy je po ruchu wszystkich pocisków -
+    // wynik jest taki sam jak przy ruchu i kolizji na zmianę, bo kolizja zależy tylko
+    // od pozycji danego pocisku.
+    void collideAll() {
+        BulletStore bullets = world.bullets;
+        // Iterujemy bez kopiowania listy - usunięte pociski są tylko oznaczane
+        for (int i = 0; i < bullets.size(); i++) {
+            Bullet bullet = bullets.get(i);
+            if (bullet.alive) {
+                bullet.collide();
+            }
+        }
+        bullets.compact();
+    }
+
+    // Stosuje wykryte trafienia w kolejności pocisków. Cel zniszczony przez wcześniejszy pocisk
+    // tego ticka wykrywamy od nowa; po zmianie poziomu (nowi wrogowie) resztę liczymy sekwencyjnie.
+    void merge() {
+        BulletStore bullets = world.bullets;
+        EnemyStore enemies = world.enemies;
+        for (int i = 0; i < bullets.size(); i++) {
+            Bullet bullet = bullets.get(i);
+            if (!bullet.alive) continue;
+            if (world.enemies != enemies) {
+                bullet.collide();
+                continue;
+            }
+            int target = targets[i];
+            if (target >= 0 && !bullet.stillHits(target)) {
+                target = bullet.detect();
+            }
+            if (target >= 0) {
+                bullet.hit(target);
+            }
+            bullet.removeIfOutside();
+        }
+        bullets.compact();
+    }
+
+    private static synchronized ForkJoinPool pool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    // Zakres pocisków [from, to) - dzielony na pół, aż będzie nie większy niż CHUNK
+    private static final class Range extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BulletStore bullets;
+        private final int[] targets;
+        private final int from, to;
+
+        Range(BulletStore bullets, int[] targets, int from, int to) {
+            this.bullets = bullets;
+            this.targets = targets;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Range(bullets, targets, from, mid), new Range(bullets, targets, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                Bullet bullet = bullets.get(i);
+                if (bullet.alive) {
+                    bullet.advance();
+                    targets[i] = bullet.detect();
+                }
+            }
+        }
+    }
+}
+
+// Wybuchy i iskry w tablicach prymitywów, bez obiektu na każdy wybuch. Tablice rosną
+// tylko wtedy, gdy pula jest za mała, a potem są używane ponownie - także przy tysiącach
+// wybuchów naraz (boss, serie trafień) nie ma pracy dla GC. Animacja wybuchu i ruch
+// iskier postępują w krokach symulacji; numer klatki wynika z wieku wybuchu.
+final class ExplosionSystem {
+    // Rozmiar wybuchu na ekranie i czas jego trwania
+    static final int SIZE = 100;
+    static final long LIFETIME_MILLIS = 400;
+    // Iskry: liczba na wybuch, czas życia, rozmiar i prędkość (piksele na krok przy 60 Hz)
+    static final int SPARKS_PER_EXPLOSION = 8;
+    static final long SPARK_LIFETIME_MILLIS = 500;
+    static final int SPARK_SIZE = 3;
+    private static final float SPARK_MIN_SPEED = 1.5f;
+    private static final float SPARK_MAX_SPEED = 4.5f;
+    private static final float SPARK_GRAVITY = 0.08f;
+    // Kolory iskier od świeżej do gasnącej
+    private static final Color[] SPARK_COLORS = {
+            new Color(255, 255, 180), new Color(255, 230, 120), new Color(255, 200, 80, 230),
+            new Color(255, 160, 50, 200), new Color(240, 120, 30, 170), new Color(220, 80, 20, 140),
+            new Color(180, 50, 10, 110), new Color(120, 30, 10, 80)
+    };
+    // Iskra w każdym odcieniu jako gotowy obrazek. Kopiowanie obrazka (przez DisplaySprites)
+    // nic nie alokuje, a fillRect półprzezroczystym kolorem w programowym potoku Java2D
+    // tworzy kilkaset bajtów śmieci na każdą iskrę w każdej klatce.
+    static final BufferedImage[] SPARK_IMAGES = sparkImages();
+
+    private final GameWorld world;
+
+    // Wybuchy: lewy górny róg i tick, w którym powstały (tickCount stoi w pauzie,
+    // więc animacja i wygasanie pauzują razem z grą)
+    private float[] explosionX = new float[64];
+    private float[] explosionY = new float[64];
+    private long[] explosionBorn = new long[64];
+    private int explosions;
+
+    // Iskry: pozycja, pozycja z poprzedniego kroku (do interpolacji), prędkość, tick narodzin
+    private float[] sparkX = new float[512];
+    private float[] sparkY = new float[512];
+    private float[] sparkPrevX = new float[512];
+    private float[] sparkPrevY = new float[512];
+    private float[] sparkDx = new float[512];
+    private float[] sparkDy = new float[512];
+    private long[] sparkBorn = new long[512];
+    private int sparks;
+
+    // Własny generator (xorshift) - iskry są tylko efektem, nie zmieniają losowania świata
+    private long noise;
+
+    ExplosionSystem(GameWorld world) {
+        this.world = world;
+        this.noise = world.seed ^ 0x9E3779B97F4A7C15L;
+        if (noise == 0) noise = 1;
+    }
+
+    // Nowy wybuch z lewym górnym rogiem w (x, y) i iskrami z jego środka
+    void add(float x, float y) {
+        if (explosions == explosionX.length) {
+            int n = explosions * 2;
+            explosionX = Arrays.copyOf(explosionX, n);
+            explosionY = Arrays.copyOf(explosionY, n);
+            explosionBorn = Arrays.copyOf(explosionBorn, n);
+        }
+        explosionX[explosions] = x;
+        explosionY[explosions] = y;
+        explosionBorn[explosions] = world.tickCount;
+        explosions++;
+
+        float cx = x + SIZE / 2f;
+        float cy = y + SIZE / 2f;
+        for (int i = 0; i < SPARKS_PER_EXPLOSION; i++) {
+            addSpark(cx, cy, i);
+        }
+    }
+
+    private void addSpark(float x, float y, int i) {
+        if (sparks == sparkX.length) {
+            int n = sparks * 2;
+            sparkX = Arrays.copyOf(sparkX, n);
+            sparkY = Arrays.copyOf(sparkY, n);
+            sparkPrevX = Arrays.copyOf(sparkPrevX, n);
+            sparkPrevY = Arrays.copyOf(sparkPrevY, n);
+            sparkDx = Arrays.copyOf(sparkDx, n);
+            sparkDy = Arrays.copyOf(sparkDy, n);
+            sparkBorn = Arrays.copyOf(sparkBorn, n);
+        }
+        // Kierunki rozłożone równo po okręgu, z losowym odchyleniem i prędkością
+        double angle = (i + nextFloat()) * (2 * Math.PI / SPARKS_PER_EXPLOSION);
+        float speed = SPARK_MIN_SPEED + (SPARK_MAX_SPEED - SPARK_MIN_SPEED) * nextFloat();
+        sparkX[sparks] = x;
+        sparkY[sparks] = y;
+        sparkPrevX[sparks] = x;
+        sparkPrevY[sparks] = y;
+        sparkDx[sparks] = (float) Math.cos(angle) * speed;
+        sparkDy[sparks] = (float) Math.sin(angle) * speed;
+        sparkBorn[sparks] = world.tickCount;
+        sparks++;
+    }
+
+    // Jeden krok symulacji: przesunięcie iskier i usunięcie wygasłych efektów (kolejność zostaje)
+    void update() {
+        long tick = world.tickCount;
+        float scale = world.motionScale;
+
+        int kept = 0;
+        for (int i = 0; i < explosions; i++) {
+            if (ageMillis(explosionBorn[i], tick) <= LIFETIME_MILLIS) {
+                explosionX[kept] = explosionX[i];
+                explosionY[kept] = explosionY[i];
+                explosionBorn[kept] = explosionBorn[i];
+                kept++;
+            }
+        }
+        explosions = kept;
+
+        kept = 0;
+        for (int i = 0; i < sparks; i++) {
+            if (ageMillis(sparkBorn[i], tick) > SPARK_LIFETIME_MILLIS) {
+                continue;
+            }
+            sparkPrevX[kept] = sparkX[i];
+            sparkPrevY[kept] = sparkY[i];
+            sparkDx[kept] = sparkDx[i];
+            sparkDy[kept] = sparkDy[i] + SPARK_GRAVITY * scale;
+            sparkX[kept] = sparkX[i] + sparkDx[kept] * scale;
+            sparkY[kept] = sparkY[i] + sparkDy[kept] * scale;
+            sparkBorn[kept] = sparkBorn[i];
+            kept++;
+        }
+        sparks = kept;
+    }
+
+    int size() {
+        return explosions;
+    }
+
+    int sparkCount() {
+        return sparks;
+    }
+
+    void clear() {
+        explosions = 0;
+        sparks = 0;
+    }
+
+    // Kopia do migawki: wiek wybuchu wybiera klatkę arkusza, wiek iskry - jej kolor
+    void capture(WorldSnapshot s) {
+        long tick = world.tickCount;
+        s.reserveExplosions(explosions, sparks);
+        for (int i = 0; i < explosions; i++) {
+            s.explosionX[i] = (int) explosionX[i];
+            s.explosionY[i] = (int) explosionY[i];
+            s.explosionAge[i] = ageMillis(explosionBorn[i], tick);
+        }
+        s.explosionCount = explosions;
+        for (int i = 0; i < sparks; i++) {
+            long age = ageMillis(sparkBorn[i], tick);
+            s.sparkPrevX[i] = sparkPrevX[i];
+            s.sparkPrevY[i] = sparkPrevY[i];
+            s.sparkX[i] = sparkX[i];
+            s.sparkY[i] = sparkY[i];
+            s.sparkShade[i] = (byte) Math.min(SPARK_IMAGES.length - 1, age * SPARK_IMAGES.length / SPARK_LIFETIME_MILLIS);
+        }
+        s.sparkCount = sparks;
+    }
+
+    private long ageMillis(long born, long tick) {
+        return (long) ((tick - born) * world.tickMillis);
+    }
+
+    private static BufferedImage[] sparkImages() {
+        BufferedImage[] images = new BufferedImage[SPARK_COLORS.length];
+        for (int i = 0; i < images.length; i++) {
+            BufferedImage image = new BufferedImage(SPARK_SIZE, SPARK_SIZE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g2 = image.createGraphics();
+            g2.setComposite(AlphaComposite.Src);
+            g2.setColor(SPARK_COLORS[i]);
+            g2.fillRect(0, 0, SPARK_SIZE, SPARK_SIZE);
+            g2.dispose();
+            images[i] = image;
+        }
+        return images;
+    }
+
+    private float nextFloat() {
+        noise ^= noise << 13;
+        noise ^= noise >>> 7;
+        noise ^= noise << 17;
+        return (noise >>> 40) / (float) (1 << 24);
+    }
+}
+
+// Ulepszenia w tablicach prymitywów: pozycja, pozycja z poprzedniego ticka (do interpolacji)
+// i typ. Wszystkie spadają z tą samą prędkością i mają ten sam rozmiar.
+final class PowerUpStore {
+    static final int SIZE = 30;
+    private static final float SPEED = 2; // Prędkość spadania
+    private static final PowerUpType[] TYPES = PowerUpType.values();
+
+    // Obrazy typów ulepszeń (indeks - numer typu)
+    private final Image[] sprites = new Image[TYPES.length];
+
+    private float[] x = new float[8];
+    private float[] y = new float[8];
+    private float[] prevY = new float[8];
+    private byte[] type = new byte[8];
+    private int count;
+
+    int size() {
+        return count;
+    }
+
+    float x(int i) {
+        return x[i];
+    }
+
+    float y(int i) {
+        return y[i];
+    }
+
+    PowerUpType type(int i) {
+        return TYPES[type[i]];
+    }
+
+    void add(float px, float py, PowerUpType t) {
+        if (count == x.length) {
+            int n = count * 2;
+            x = Arrays.copyOf(x, n);
+            y = Arrays.copyOf(y, n);
+            prevY = Arrays.copyOf(prevY, n);
+            type = Arrays.copyOf(type, n);
+        }
+        if (sprites[t.ordinal()] == null) {
+            sprites[t.ordinal()] = SpriteCache.get(t.imagePath);
+        }
+        x[count] = px;
+        y[count] = py;
+        prevY[count] = py;
+        type[count] = (byte) t.ordinal();
+        count++;
+    }
+
+    // Ruch wszystkich ulepszeń w dół ekranu
+    void move(float motionScale) {
+        float dy = SPEED * motionScale;
+        for (int i = 0; i < count; i++) {
+            prevY[i] = y[i];
+            y[i] += dy;
+        }
+    }
+
+    // Usuwa ulepszenie i (kolejność pozostałych zostaje)
+    void remove(int i) {
+        count--;
+        System.arraycopy(x, i + 1, x, i, count - i);
+        System.arraycopy(y, i + 1, y, i, count - i);
+        System.arraycopy(prevY, i + 1, prevY, i, count - i);
+        System.arraycopy(type, i + 1, type, i, count - i);
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    // Kopia do migawki (y z poprzedniego ticka do interpolacji)
+    void capture(WorldSnapshot s) {
+        s.reservePowerUps(count);
+        for (int i = 0; i < count; i++) {
+            s.powerUpImage[i] = sprites[type[i]];
+            s.powerUpX[i] = x[i];
+            s.powerUpPrevY[i] = prevY[i];
+            s.powerUpY[i] = y[i];
+        }
+        s.powerUpCount = count;
+    }
+}
+
+// Klasa do przechowywania konfiguracji poziomów
+class LevelConfig {
+    private List<List<Float>> planePositionsPerRow;
+
+    public LevelConfig(List<List<Float>> planePositionsPerRow) {
+        this.planePositionsPerRow = planePositionsPerRow;
+    }
+
+    public List<List<Float>> getPlanePositionsPerRow() {
+        return planePositionsPerRow;
+    }
+
+    public int getRows() {
+        return planePositionsPerRow.size();
+    }
+
+    public List<Float> getPlanePositionsInRow(int row) {
+        if (row >= 0 && row < planePositionsPerRow.size()) {
+            return planePositionsPerRow.get(row);
+        }
+        return new ArrayList<>();
+    }
+}
+
+// Wrogowie poziomu w tablicach prymitywów (indeks = numer wroga): położenie w formacji
+// przy zerowym przesunięciu, rozmiar, zdrowie, rodzaj i numer obrazu. Systemy (ruch formacji,
+// siatka kolizji, strzały, rysowanie) przeglądają tablice po kolei, bez obiektu na wroga.
+// Położenie na planszy podają left(i) i top(i) - przesunięcie formacji dodajemy przy odczycie.
+final class EnemyStore {
+    // Kopia values() - samo values() za każdym razem tworzy nową tablicę
+    private static final EnemyKind[] KINDS = EnemyKind.values();
+
+    private float[] x = new float[16];
+    private float[] y = new float[16];
+    private float[] width = new float[16];
+    private float[] height = new float[16];
+    private int[] health = new int[16];
+    private byte[] kind = new byte[16];
+    private byte[] sprite = new byte[16];
+    private boolean[] alive = new boolean[16];
+    private int count;
+
+    // Obrazy (indeks - numer obrazu, na razie jeden na rodzaj wroga); obrócone i współdzielone
+    private final Image[] sprites = new Image[KINDS.length];
+
+    // Formacja, w której lecą wrogowie (null - wrogowie stoją w miejscu x, y)
+    Formation formation;
+
+    int size() {
+        return count;
+    }
+
+    // Dodaje wroga; obraz pochodzi z bezpiecznego wątkowo SpriteCache, więc poziom
+    // można budować w wątku w tle
+    int add(EnemyKind k, float px, float py) {
+        if (count == x.length) {
+            int n = count * 2;
+            x = Arrays.copyOf(x, n);
+            y = Arrays.copyOf(y, n);
+            width = Arrays.copyOf(width, n);
+            height = Arrays.copyOf(height, n);
+            health = Arrays.copyOf(health, n);
+            kind = Arrays.copyOf(kind, n);
+            sprite = Arrays.copyOf(sprite, n);
+            alive = Arrays.copyOf(alive, n);
+        }
+        int s = k.ordinal();
+        if (sprites[s] == null) {
+            // Jeśli nie udało się załadować obrazu - dostajemy zaślepkę
+            sprites[s] = SpriteCache.getOrPlaceholder(k.imagePath, SpriteCache.Variant.ROTATED_180,
+                    k.width, k.height, Color.BLUE);
+        }
+        int i = count++;
+        x[i] = px;
+        y[i] = py;
+        width[i] = k.width;
+        height[i] = k.height;
+        health[i] = k.maxHealth;
+        kind[i] = (byte) k.ordinal();
+        sprite[i] = (byte) s;
+        alive[i] = true;
+        return i;
+    }
+
+    boolean isAlive(int i) {
+        return alive[i];
+    }
+
+    int aliveCount() {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (alive[i]) n++;
+        }
+        return n;
+    }
+
+    EnemyKind kind(int i) {
+        return KINDS[kind[i]];
+    }
+
+    float x(int i) {
+        return x[i];
+    }
+
+    float y(int i) {
+        return y[i];
+    }
+
+    float width(int i) {
+        return width[i];
+    }
+
+    float height(int i) {
+        return height[i];
+    }
+
+    // Zdrowie bossa w procentach (zwykły wróg - zawsze 100)
+    int healthPercent(int i) {
+        int maxHealth = KINDS[kind[i]].maxHealth;
+        return maxHealth > 0 ? (int) Math.ceil(health[i] * 100.0 / maxHealth) : 100;
+    }
+
+    // Lewa krawędź na planszy
+    float left(int i) {
+        return formation == null ? x[i] : x[i] + formation.offsetX();
+    }
+
+    // Górna krawędź na planszy (każdy wróg schodzi o połowę swojej wysokości)
+    float top(int i) {
+        return formation == null ? y[i] : y[i] + formation.drops() * (height[i] / 2);
+    }
+
+    // Trafienie: boss traci zdrowie, zwykły wróg ginie od razu; zwraca true, jeśli wróg zginął
+    boolean hit(int i, int damage) {
+        if (health[i] > 0) {
+            health[i] -= damage;
+            if (health[i] > 0) return false;
+        }
+        destroy(i);
+        return true;
+    }
+
+    // Zniszczenie wroga (formacja aktualizuje swoje krawędzie)
+    void destroy(int i) {
+        if (!alive[i]) return;
+        alive[i] = false;
+        if (formation != null) {
+            formation.enemyDestroyed(i);
+        }
+    }
+
+    // Przywrócenie wroga z pełnym zdrowiem (w pomiarach); potem trzeba wywołać formation.refresh()
+    void revive(int i) {
+        alive[i] = true;
+        health[i] = kind(i).maxHealth;
+    }
+
+    // Strzał wroga i: pocisk jego typu ze środka dolnej krawędzi
+    void shoot(int i, BulletStore bullets) {
+        float bulletStartX = left(i) + width[i] / 2f - 4;
+        float bulletStartY = top(i) + height[i];
+        bullets.spawnEnemy(kind(i).bulletType, bulletStartX, bulletStartY);
+    }
+
+    // Kopia żywych wrogów do migawki: położenie na planszy i zdrowie bossów (do paska nad samolotem)
+    void capture(WorldSnapshot s) {
+        float offsetX = formation == null ? 0 : formation.offsetX();
+        int drops = formation == null ? 0 : formation.drops();
+        s.reserveEnemies(count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (!alive[i]) continue;
+            int maxHealth = KINDS[kind[i]].maxHealth;
+            s.enemyImage[n] = sprites[sprite[i]];
+            s.enemyLeft[n] = x[i] + offsetX;
+            s.enemyTop[n] = y[i] + drops * (height[i] / 2);
+            s.enemyWidth[n] = (int) width[i];
+            s.enemyHeight[n] = (int) height[i];
+            s.enemyHealth[n] = maxHealth > 0 ? Math.max(0, (double) health[i] / maxHealth) : -1;
+            n++;
+        }
+        s.enemyCount = n;
+        s.enemiesTotal = count;
+    }
+}
+
+// Formacja wrogów poziomu, która porusza się jako jeden blok: wspólne przesunięcie
+// w poziomie i liczba zejść w dół. Położenie wroga na planszy liczymy dopiero przy odczycie
+// (EnemyStore.left()/top()), więc ruch formacji kosztuje O(1) niezależnie od liczby wrogów.
+// Skrajne położenia żywych wrogów są zapamiętane i przeliczane tylko po zniszczeniu wroga,
+// który leżał na krawędzi.
+final class Formation {
+    // Wspólne przesunięcie w poziomie i liczba zejść (każdy wróg schodzi o połowę swojej wysokości)
+    private float offsetX;
+    private int drops;
+    private int direction;
+
+    private final EnemyStore enemies;
+    private int alive;
+    // Skrajne położenia żywych wrogów przy zerowym przesunięciu
+    private float minLeft, maxRight;
+    // Najniższy dół wrogów danej wysokości: dla grupy g dół = bottoms[g] + drops * halfHeights[g]
+    private float[] halfHeights = new float[4];
+    private float[] bottoms = new float[4];
+    private int groups;
+    private boolean extentsValid;
+
+    Formation(EnemyStore enemies, int direction) {
+        this.enemies = enemies;
+        this.direction = direction;
+        enemies.formation = this;
+        alive = enemies.aliveCount();
+    }
+
+    float offsetX() {
+        return offsetX;
+    }
+
+    int drops() {
+        return drops;
+    }
+
+    int direction() {
+        return direction;
+    }
+
+    // Przesuwa formację o step w bieżącym kierunku. Po dotknięciu krawędzi planszy formacja
+    // zawraca i schodzi w dół; zwraca true, jeśli zeszła do wysokości playerY.
+    boolean move(float step, float width, float playerY) {
+        if (alive == 0) return false;
+        if (!extentsValid) {
+            computeExtents();
+        }
+        offsetX += step * direction;
+        if (offsetX + minLeft < 0 || offsetX + maxRight > width) {
+            direction = -direction;
+            drops++;
+            for (int g = 0; g < groups; g++) {
+                if (bottoms[g] + drops * halfHeights[g] >= playerY) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Ponowne przeliczenie po zmianie widoczności wrogów z zewnątrz (np. w pomiarach)
+    void refresh() {
+        alive = enemies.aliveCount();
+        extentsValid = false;
+    }
+
+    // Wróg i zniszczony: skrajne położenia liczymy od nowa tylko, jeśli był na krawędzi
+    void enemyDestroyed(int i) {
+        alive--;
+        if (!extentsValid) return;
+        float x = enemies.x(i);
+        float h = enemies.height(i);
+        if (x <= minLeft || x + enemies.width(i) >= maxRight) {
+            extentsValid = false;
+            return;
+        }
+        float half = h / 2;
+        for (int g = 0; g < groups; g++) {
+            if (halfHeights[g] == half && enemies.y(i) + h >= bottoms[g]) {
+                extentsValid = false;
+                return;
+            }
+        }
+    }
+
+    private void computeExtents() {
+        minLeft = Float.MAX_VALUE;
+        maxRight = -Float.MAX_VALUE;
+        groups = 0;
+        for (int i = 0; i < enemies.size(); i++) {
+            if (!enemies.isAlive(i)) continue;
+            float x = enemies.x(i);
+            float h = enemies.height(i);
+            minLeft = Math.min(minLeft, x);
+            maxRight = Math.max(maxRight, x + enemies.width(i));
+            float half = h / 2;
+            float bottom = enemies.y(i) + h;
+            int g = 0;
+            while (g < groups && halfHeights[g] != half) {
+                g++;
+            }
+            if (g == groups) {
+                if (groups == halfHeights.length) {
+                    halfHeights = Arrays.copyOf(halfHeights, groups * 2);
+                    bottoms = Arrays.copyOf(bottoms, groups * 2);
+                }
+                halfHeights[g] = half;
+                bottoms[g] = bottom;
+                groups++;
+            } else {
+                bottoms[g] = Math.max(bottoms[g], bottom);
+            }
+        }
+        extentsValid = true;
+    }
+}
+
+// Klasa reprezentująca statek gracza
+class Belka {
+    // Świat gry - jego zegar efektów odmierza tarczę i nietykalność
+    private final GameWorld world;
+    float x, y;
+    int width;
+    int height;
+    Image imageRight;
+    Image imageLeft;
+    Image imageStand;
+    Image currentImage;
+    private boolean invulnerable = false; 
+
+
+    // Dokładny hitbox: trójkąt (10, 0) - (60, 35) - (10, 70) względem (x, y)
+    static final float HULL_LEFT = 10;
+    static final float HULL_TIP_X = 60;
+    static final float HULL_TIP_Y = 35;
+    static final float HULL_HEIGHT = 70;
+    
+    private boolean shieldActive = false;
+    static final int SHIELD_DURATION = 5000;
+    // Półprzezroczysty niebieski kolor tarczy
+    static final Color SHIELD_COLOR = new Color(0, 0, 255, 100);
+
+    // Metoda do aktywacji tarczy
+    public void activateShield() {
+        shieldActive = true;
+        // Tarcza aktywna przez 5 sekund; kolejne ulepszenie przedłuża ten sam termin
+        world.effects.schedule(EffectScheduler.Effect.SHIELD, world.ticksFor(SHIELD_DURATION));
+    }
+
+    // Metoda do dezaktywacji tarczy
+    public void deactivateShield() {
+        shieldActive = false;
+        world.effects.cancel(EffectScheduler.Effect.SHIELD);
+    }
+
+    // Metoda do sprawdzania statusu tarczy
+    public boolean isShieldActive() {
+        return shieldActive;
+    }
+
+    Belka(GameWorld world, float x, float y) {
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.width = 70;
+        this.height = 70;
+
+        this.imageRight = SpriteCache.get("planeUserRight.png");
+        this.imageLeft = SpriteCache.get("planeUserLeft.png");
+        this.imageStand = SpriteCache.get("planeUserStand.png");
+        this.currentImage = imageStand;
     }
 
     void setX(float newX) {
         this.x = newX;
-        updateHitbox();
     }
 
-    void setDirection(String direction) {
-        switch (direction.toLowerCase()) {
-            case "right":
-                currentImage = imageRight;
+    void setDirection(String direction) {
+        switch (direction.toLowerCase()) {
+            case "right":
+                currentImage = imageRight;
+                break;
+            case "left":
+                currentImage = imageLeft;
+                break;
+            default:
+                currentImage = imageStand;
+                break;
+        }
+    }
+
+   // W klasie Belka, poniżej innych metod
+    public void becomeInvulnerable(int durationMs) {
+    invulnerable = true;
+    // Nietykalność kończy zegar efektów świata (endInvulnerability)
+    world.effects.schedule(EffectScheduler.Effect.INVULNERABILITY, world.ticksFor(durationMs));
+}
+
+    void endInvulnerability() {
+        invulnerable = false;
+    }
+
+// Metoda, która zwraca true, jeśli jesteśmy jeszcze w trybie nietykalności
+    public boolean isInvulnerable() {
+    return invulnerable;
+}
+   
+    // Czy prostokąt (rx, ry, rw, rh) nachodzi na trójkąt kadłuba statku
+    boolean hullIntersects(float rx, float ry, float rw, float rh) {
+        return Collision.triangleIntersectsRect(
+                (double) x + HULL_LEFT, y,
+                (double) x + HULL_TIP_X, (double) y + HULL_TIP_Y,
+                (double) x + HULL_LEFT, (double) y + HULL_HEIGHT,
+                rx, ry, rw, rh);
+    }
+
+    // Prostokąt otaczający trójkąt kadłuba
+    float hullMinX() {
+        return x + HULL_LEFT;
+    }
+
+    float hullMaxX() {
+        return x + HULL_TIP_X;
+    }
+
+    float hullMinY() {
+        return y;
+    }
+
+    float hullMaxY() {
+        return y + HULL_HEIGHT;
+    }
+
+    // Kopia do migawki. W czasie nietykalności statek miga:
+    // co drugie 100 ms (czasu symulacji) nie rysujemy go wcale
+    void capture(WorldSnapshot s) {
+        s.shipImage = currentImage;
+        s.shipX = (int) x;
+        s.shipY = (int) y;
+        s.shipWidth = width;
+        s.shipHeight = height;
+        s.shipVisible = !(invulnerable && (world.timeMillis() / 100) % 2 == 0);
+        s.shieldActive = shieldActive;
+    }
+}
+
+class EnemyBulletType1 extends Bullet {
+    public EnemyBulletType1(GameWorld world, float startX, float startY) {
+        super(world, startX, startY, 0, 4, BulletOwner.ENEMY, SpriteCache.getOrPlaceholder("enemy_bullet2.png", SpriteCache.Variant.ROTATED_180, 8, 16, Color.MAGENTA));
+        this.width = 15;
+        this.height = 26;
+    }
+
+    protected int kind() {
+        return BulletStore.KIND_ENEMY_1;
+    }
+
+    protected int detect() {
+        // Jeśli gracz jest już nietykalny - wychodzimy
+        if (world.b.isInvulnerable()) {
+            return -1;
+        }
+        // Faza wstępna: pocisk daleko od statku (inne komórki siatki)
+        if (!world.grid.touchesPlayer(x, y, width, height)) {
+            return -1;
+        }
+        // Kolizja ze statkiem gracza (trójkąt kadłuba kontra prostokąt pocisku)
+        return world.b.hullIntersects(x, y, width, height) ? 0 : -1;
+    }
+
+    protected void hit(int target) {
+        // Gracz mógł stać się nietykalny po trafieniu wcześniejszym pociskiem z tego ticka
+        if (world.b.isInvulnerable()) {
+            return;
+        }
+        world.playerHit();
+        world.removeBullet(this);
+    }
+
+}
+
+// Pocisk wroga typu 2
+class EnemyBulletType2 extends Bullet {
+    public EnemyBulletType2(GameWorld world, float startX, float startY) {
+        super(world, startX, startY, 0, 6, BulletOwner.ENEMY, SpriteCache.getOrPlaceholder("enemy_bullet1.png", SpriteCache.Variant.ROTATED_180, 12, 24, Color.ORANGE));
+        this.width = 19;
+        this.height = 30;
+    }
+
+    protected int kind() {
+        return BulletStore.KIND_ENEMY_2;
+    }
+
+    protected int detect() {
+        if (world.b.isInvulnerable()) {
+            return -1;
+        }
+        // Faza wstępna: pocisk daleko od statku (inne komórki siatki)
+        if (!world.grid.touchesPlayer(x, y, width, height)) {
+            return -1;
+        }
+        // Kolizja ze statkiem gracza (trójkąt kadłuba kontra prostokąt pocisku)
+        return world.b.hullIntersects(x, y, width, height) ? 0 : -1;
+    }
+
+    protected void hit(int target) {
+        if (world.b.isInvulnerable()) {
+            return;
+        }
+        world.playerHit();
+        world.removeBullet(this);
+    }
+
+}
+
+// Pocisk wroga typu 3
+class EnemyBulletType3 extends Bullet {
+    public EnemyBulletType3(GameWorld world, float startX, float startY) {
+        super(world, startX, startY, 0, 4, BulletOwner.ENEMY, SpriteCache.getOrPlaceholder("enemy_bullet3.png", SpriteCache.Variant.ROTATED_180, 8, 16, Color.MAGENTA));
+        this.width = 20;
+        this.height = 30;
+    }
+
+    protected int kind() {
+        return BulletStore.KIND_ENEMY_3;
+    }
+
+    protected int detect() {
+        if (world.b.isInvulnerable()) {
+            return -1;
+        }
+        // Faza wstępna: pocisk daleko od statku (inne komórki siatki)
+        if (!world.grid.touchesPlayer(x, y, width, height)) {
+            return -1;
+        }
+        // Kolizja ze statkiem gracza (trójkąt kadłuba kontra prostokąt pocisku)
+        return world.b.hullIntersects(x, y, width, height) ? 0 : -1;
+    }
+
+    protected void hit(int target) {
+        if (world.b.isInvulnerable()) {
+            return;
+        }
+        world.playerHit();
+        world.removeBullet(this);
+    }
+
+}
+
+// Pocisk wroga typu 4
+class EnemyBulletType4 extends Bullet {
+    public EnemyBulletType4(GameWorld world, float startX, float startY) {
+        super(world, startX, startY, 0, 4, BulletOwner.ENEMY, SpriteCache.getOrPlaceholder("enemy_bullet4.png", SpriteCache.Variant.ROTATED_180, 8, 16, Color.MAGENTA));
+        this.width = 15;
+        this.height = 26;
+    }
+
+    protected int kind() {
+        return BulletStore.KIND_ENEMY_4;
+    }
+
+    protected int detect() {
+        if (world.b.isInvulnerable()) {
+            return -1;
+        }
+        // Faza wstępna: pocisk daleko od statku (inne komórki siatki)
+        if (!world.grid.touchesPlayer(x, y, width, height)) {
+            return -1;
+        }
+        // Kolizja ze statkiem gracza (trójkąt kadłuba kontra prostokąt pocisku)
+        return world.b.hullIntersects(x, y, width, height) ? 0 : -1;
+    }
+
+    protected void hit(int target) {
+        if (world.b.isInvulnerable()) {
+            return;
+        }
+        world.playerHit();
+        world.removeBullet(this);
+    }
+
+}
+
+// Pocisk gracza
+class PlayerBullet extends Bullet {
+    public PlayerBullet(GameWorld world, float startX, float startY) {
+        super(world, startX, startY, 0, -5, BulletOwner.PLAYER, SpriteCache.getOrPlaceholder("bullet_simple.png", SpriteCache.Variant.ORIGINAL, 10, 20, Color.YELLOW));
+        this.width = 15;
+        this.height = 25;
+    }
+
+    public PlayerBullet setDirection(float dx, float dy) {
+        this.dx = dx;
+        this.dy = dy;
+        return this;
+    }
+
+    protected int kind() {
+        return BulletStore.KIND_PLAYER;
+    }
+
+    protected int detect() {
+        // Sprawdzanie kolizji z wrogami - tylko z kandydatami z siatki przestrzennej.
+        // Trafiamy pierwszego (wg kolejności na liście) wroga, tak jak przy przeglądaniu całej listy.
+        return world.grid.firstEnemyHit(x, y, width, height, world.enemies);
+    }
+
+    // Wrogowie w czasie ticka tylko giną, więc żywy cel jest nadal pierwszym trafionym
+    protected boolean stillHits(int target) {
+        return world.enemies.isAlive(target);
+    }
+
+    protected void hit(int plane) {
+        EnemyStore enemies = world.enemies;
+        world.collisions++;
+
+        // 1) Obliczamy pożądane współrzędne dla wybuchu:
+        int explosionW = world.explosionWidth;
+        int explosionH = world.explosionHeight;
+
+        float planeX = enemies.left(plane);
+        float planeY = enemies.top(plane);
+        float explosionX = planeX + enemies.width(plane)  / 4f - explosionW / 4f;
+        float explosionY = planeY + enemies.height(plane) / 4f - explosionH / 4f;
+
+        // Jeśli to boss
+        if (enemies.kind(plane).isBoss()) {
+            // Boss otrzymuje więcej obrażeń
+            if (enemies.hit(plane, 5)) {
+                world.incrementScore(100); // Bonus za zniszczenie bossa
+                // Wypuszczenie ulepszenia z bossów
+                world.spawnRandomPowerUp(planeX, planeY);
+                world.addExplosion(explosionX, explosionY);
+            }
+        } else {
+            // Zwykły wróg
+            enemies.destroy(plane);
+            world.incrementScore();
+            // Wypuszczenie ulepszenia ze zwykłych wrogów
+            world.spawnRandomPowerUp(planeX, planeY);
+            world.addExplosion(explosionX, explosionY);
+        }
+        world.removeBullet(this);
+    }
+
+}
+
+// Wstępne wczytanie wszystkich obrazów przed rozpoczęciem gry. Pliki są dekodowane
+// równolegle w puli fork-join; sprite'y wrogów od razu dostają też obrócony wariant.
+// Po wczytaniu SpriteCache jest "zamykany", więc w czasie gry nic nie czyta z dysku.
+final class AssetPreloader {
+    // Sprite'y rysowane do góry nogami (wrogowie i ich pociski)
+    private static final String[] ROTATED_PREFIXES = {"mob", "boss", "enemy_"};
+    private static final String[] EXTENSIONS = {".png", ".jpg", ".jpeg", ".gif"};
+
+    // Postęp wczytywania (wywoływane z wątków puli)
+    interface Listener {
+        void loaded(String path, int done, int total);
+    }
+
+    // Czas wczytania jednego pliku
+    static final class Result {
+        final String path;
+        final long nanos;
+        final boolean ok;
+
+        Result(String path, long nanos, boolean ok) {
+            this.path = path;
+            this.nanos = nanos;
+            this.ok = ok;
+        }
+    }
+
+    private AssetPreloader() {
+    }
+
+    // Wszystkie obrazy z katalogu zasobów (albo z bieżącego katalogu, jeśli go nie ma)
+    static List<String> discover() {
+        File dir = new File(SpriteCache.ASSET_DIR);
+        if (!dir.isDirectory()) {
+            dir = new File(".");
+        }
+        List<String> paths = new ArrayList<>();
+        String[] names = dir.list();
+        if (names != null) {
+            for (String name : names) {
+                String lower = name.toLowerCase();
+                for (String ext : EXTENSIONS) {
+                    if (lower.endsWith(ext)) {
+                        paths.add(name);
+                        break;
+                    }
+                }
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    // Wczytuje obrazy równolegle i czeka na koniec; zwraca czasy w kolejności ścieżek
+    static List<Result> preload(List<String> paths, Listener listener) {
+        int total = paths.size();
+        AtomicInteger done = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<ForkJoinTask<Result>> tasks = new ArrayList<>();
+            for (String path : paths) {
+                tasks.add(pool.submit(() -> {
+                    Result result = load(path);
+                    if (listener != null) {
+                        listener.loaded(path, done.incrementAndGet(), total);
+                    }
+                    return result;
+                }));
+            }
+            List<Result> results = new ArrayList<>();
+            for (ForkJoinTask<Result> task : tasks) {
+                results.add(task.join());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Result load(String path) {
+        long start = System.nanoTime();
+        boolean ok;
+        if (path.toLowerCase().endsWith(".gif")) {
+            // GIF-y mogą być animowane - dekodujemy od razu wszystkie klatki
+            ok = SpriteCache.sheet(path).width > 0;
+        } else if (isRotated(path)) {
+            ok = SpriteCache.get(path, SpriteCache.Variant.ROTATED_180) != null;
+        } else {
+            ok = SpriteCache.get(path) != null;
+        }
+        return new Result(path, System.nanoTime() - start, ok);
+    }
+
+    private static boolean isRotated(String path) {
+        for (String prefix : ROTATED_PREFIXES) {
+            if (path.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // Raport: czas całkowity, suma czasów plików i czas każdego pliku (od najwolniejszego)
+    static String report(List<Result> results, long totalNanos) {
+        long sum = 0;
+        for (Result r : results) sum += r.nanos;
+        List<Result> sorted = new ArrayList<>(results);
+        sorted.sort((a, b) -> Long.compare(b.nanos, a.nanos));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Wczytano %d obrazów w %.1f ms (suma czasów plików %.1f ms)",
+                results.size(), totalNanos / 1e6, sum / 1e6));
+        for (Result r : sorted) {
+            sb.append(String.format("%n  %-24s %8.1f ms%s", r.path, r.nanos / 1e6, r.ok ? "" : "  (błąd)"));
+        }
+        return sb.toString();
+    }
+}
+
+// Ekran ładowania: pasek postępu wczytywania zasobów, potem przejście do gry
+class LoadingScreen extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // Czcionki i napis - tworzone raz, a nie przy każdym przerysowaniu
+    private static final Font TITLE_FONT = new Font("Arial", Font.BOLD, 30);
+    private static final Font PROGRESS_FONT = new Font("Arial", Font.PLAIN, 14);
+    private static final String TITLE = "Ładowanie...";
+
+    private volatile int done = 0;
+    private volatile int total = 0;
+    private volatile String current = "";
+
+    LoadingScreen() {
+        setBackground(Color.BLACK);
+    }
+
+    // Wczytuje zasoby w tle i po zakończeniu wywołuje onLoaded w wątku EDT
+    void start(Runnable onLoaded) {
+        Thread loader = new Thread(() -> {
+            long start = System.nanoTime();
+            List<String> paths = AssetPreloader.discover();
+            total = paths.size();
+            repaint();
+            List<AssetPreloader.Result> results = AssetPreloader.preload(paths, (path, n, all) -> {
+                done = n;
+                current = path;
+                repaint();
+            });
+            SpriteCache.seal();
+            System.out.println(AssetPreloader.report(results, System.nanoTime() - start));
+            SwingUtilities.invokeLater(onLoaded);
+        }, "asset-preload");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    public void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2d = (Graphics2D) g;
+        int w = getWidth();
+        int h = getHeight();
+
+        g2d.setColor(Color.WHITE);
+        g2d.setFont(TITLE_FONT);
+        int titleWidth = g2d.getFontMetrics().stringWidth(TITLE);
+        g2d.drawString(TITLE, (w - titleWidth) / 2, h / 2 - 30);
+
+        // Pasek postępu
+        int barWidth = w / 2;
+        int barX = (w - barWidth) / 2;
+        int barY = h / 2;
+        g2d.drawRect(barX, barY, barWidth, 20);
+        int filled = total > 0 ? barWidth * done / total : 0;
+        g2d.fillRect(barX, barY, filled, 20);
+
+        g2d.setFont(PROGRESS_FONT);
+        String text = done + " / " + total + "  " + current;
+        int textWidth = g2d.getFontMetrics().stringWidth(text);
+        g2d.drawString(text, (w - textWidth) / 2, barY + 45);
+    }
+}
+
+// Pętla gry ze stałym krokiem symulacji.
+// Działa we własnym wątku: symulacja jest zawsze przesuwana o stały krok (tick),
+// niezależnie od liczby klatek na sekundę i obciążenia wątku EDT.
+// Nadmiar czasu (akumulator) jest przekazywany do rysowania jako współczynnik interpolacji.
+final class GameLoop implements Runnable {
+    interface Target {
+        // Jeden krok symulacji
+        void tick();
+
+        // Rysowanie klatki; alpha w [0, 1) to ułamek kroku, który upłynął od ostatniego ticka
+        void render(float alpha);
+    }
+
+    // Maksymalna liczba kroków nadrabianych w jednej klatce (ochrona przed "spiralą śmierci")
+    private static final int MAX_STEPS_PER_FRAME = 5;
+
+    private final Target target;
+    private final long stepNanos;
+    private final long frameNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    GameLoop(Target target, double tickRate, int maxFps) {
+        this.target = target;
+        this.stepNanos = (long) (1_000_000_000L / tickRate);
+        this.frameNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+    }
+
+    // Długość kroku symulacji w milisekundach
+    double tickMillis() {
+        return stepNanos / 1_000_000.0;
+    }
+
+    // Liczba ticków odpowiadająca podanemu czasowi (co najmniej 1)
+    int ticksFor(int millis) {
+        return Math.max(1, (int) Math.round(millis / tickMillis()));
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    public void run() {
+        long previous = System.nanoTime();
+        long lastFrame = previous - frameNanos;
+        long accumulator = 0;
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previous;
+            previous = now;
+
+            int steps = 0;
+            while (accumulator >= stepNanos && steps < MAX_STEPS_PER_FRAME) {
+                target.tick();
+                accumulator -= stepNanos;
+                steps++;
+            }
+            // Jeśli nie nadążamy - porzucamy zaległe kroki zamiast je kumulować
+            if (accumulator >= stepNanos) {
+                accumulator %= stepNanos;
+            }
+
+            if (now - lastFrame >= frameNanos) {
+                target.render((float) accumulator / stepNanos);
+                lastFrame = now;
+            }
+
+            // Czekamy do następnego kroku symulacji lub następnej klatki
+            long untilTick = stepNanos - accumulator;
+            long untilFrame = frameNanos - (System.nanoTime() - lastFrame);
+            long wait = Math.min(untilTick, untilFrame);
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+    }
+}
+
+// Płótno do aktywnego rysowania (BufferStrategy z przełączaniem stron).
+// Klatki prezentuje pętla gry, a nie RepaintManager Swinga.
+final class GameCanvas extends Canvas {
+    private static final long serialVersionUID = 1L;
+
+    private final Plansza p;
+    private volatile BufferStrategy strategy;
+    // Czy po show() tylny bufor nadal zawiera ostatnią klatkę (kopiowanie zamiast przełączania
+    // stron albo przełączanie z FlipContents.COPIED) - wtedy można rysować tylko zmiany
+    private volatile boolean preservesContents;
+
+    GameCanvas(Plansza p) {
+        this.p = p;
+        setIgnoreRepaint(true);
+        setFocusable(true);
+    }
+
+    // Tworzy BufferStrategy; zwraca false, jeśli aktywne rysowanie nie jest możliwe
+    boolean createStrategy() {
+        try {
+            // Najpierw próbujemy przełączania stron (page flipping) w pamięci karty graficznej
+            BufferCapabilities flipping = new BufferCapabilities(
+                    new ImageCapabilities(true), new ImageCapabilities(true),
+                    BufferCapabilities.FlipContents.UNDEFINED);
+            try {
+                createBufferStrategy(2, flipping);
+            } catch (AWTException e) {
+                createBufferStrategy(2);
+            }
+            strategy = getBufferStrategy();
+            BufferCapabilities caps = strategy.getCapabilities();
+            preservesContents = !caps.isPageFlipping()
+                    || caps.getFlipContents() == BufferCapabilities.FlipContents.COPIED;
+        } catch (RuntimeException e) {
+            System.err.println("Aktywne rysowanie niedostępne: " + e);
+            strategy = null;
+        }
+        return strategy != null;
+    }
+
+    boolean isReady() {
+        return strategy != null && isDisplayable() && getWidth() > 0 && getHeight() > 0;
+    }
+
+    // Rysuje i prezentuje jedną klatkę (wywoływane z wątku pętli gry)
+    void presentFrame(float alpha) {
+        BufferStrategy bs = strategy;
+        if (bs == null) return;
+        // Po odtworzeniu lub utracie bufora klatkę rysujemy w całości
+        boolean preserved = preservesContents;
+        try {
+            do {
+                do {
+                    Graphics g = bs.getDrawGraphics();
+                    try {
+                        p.drawFrame(g, getWidth(), getHeight(), alpha, preserved);
+                    } finally {
+                        g.dispose();
+                    }
+                    preserved = false;
+                } while (bs.contentsRestored());
+                bs.show();
+            } while (bs.contentsLost());
+            Toolkit.getDefaultToolkit().sync();
+        } catch (IllegalStateException e) {
+            // Płótno zostało właśnie usunięte z okna - pomijamy klatkę
+        }
+    }
+
+    public void removeNotify() {
+        strategy = null;
+        super.removeNotify();
+    }
+}
+
+// Siatka przestrzenna (spatial hash) - wstępna faza wykrywania kolizji.
+// Co tick wstawiamy do niej widocznych wrogów i statek gracza; pocisk sprawdza dokładnie
+// (hitboxem) tylko wrogów z komórek, na które zachodzi, a nie wszystkich wrogów na planszy.
+final class SpatialGrid {
+    static final int CELL_SIZE = 64;
+
+    private int cols = 1;
+    private int rows = 1;
+    // Identyfikatory (indeksy w liście wrogów) pogrupowane według komórek:
+    // komórka c zawiera cellIds[cellStart[c] .. cellStart[c + 1])
+    private int[] cellStart = new int[2];
+    private int[] cellIds = new int[64];
+    private int[] cellFill = new int[1];
+    // Zakresy komórek każdego wroga (wypełniane w rebuild)
+    private int[] minCol = new int[64];
+    private int[] maxCol = new int[64];
+    private int[] minRow = new int[64];
+    private int[] maxRow = new int[64];
+    private int itemCount;
+
+    // Zakres komórek zajmowanych przez statek gracza
+    private int playerMinCol, playerMaxCol, playerMinRow, playerMaxRow;
+
+    // Przebudowuje siatkę: widoczni wrogowie i statek gracza dla planszy width x height
+    void rebuild(EnemyStore enemies, Belka player, int width, int height) {
+        cols = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+        rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+        int cellCount = cols * rows;
+        if (cellStart.length < cellCount + 1) {
+            cellStart = new int[cellCount + 1];
+            cellFill = new int[cellCount];
+        } else {
+            Arrays.fill(cellStart, 0, cellCount + 1, 0);
+        }
+
+        itemCount = enemies.size();
+        if (minCol.length < itemCount) {
+            int n = Math.max(itemCount, minCol.length * 2);
+            minCol = new int[n];
+            maxCol = new int[n];
+            minRow = new int[n];
+            maxRow = new int[n];
+        }
+
+        // 1) Liczymy, ile wrogów przypada na każdą komórkę
+        int total = 0;
+        for (int i = 0; i < itemCount; i++) {
+            if (!enemies.isAlive(i)) {
+                // Pusty zakres - niewidoczny wróg nie trafia do żadnej komórki
+                minCol[i] = 1;
+                maxCol[i] = 0;
+                minRow[i] = 1;
+                maxRow[i] = 0;
+                continue;
+            }
+            float left = enemies.left(i);
+            float top = enemies.top(i);
+            minCol[i] = col(left);
+            maxCol[i] = col(left + enemies.width(i));
+            minRow[i] = row(top);
+            maxRow[i] = row(top + enemies.height(i));
+            for (int r = minRow[i]; r <= maxRow[i]; r++) {
+                for (int c = minCol[i]; c <= maxCol[i]; c++) {
+                    cellStart[r * cols + c + 1]++;
+                    total++;
+                }
+            }
+        }
+        // 2) Sumy prefiksowe wyznaczają początek każdej komórki
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        // 3) Rozkładamy identyfikatory do komórek
+        if (cellIds.length < total) {
+            cellIds = new int[Math.max(total, cellIds.length * 2)];
+        }
+        System.arraycopy(cellStart, 0, cellFill, 0, cellCount);
+        for (int i = 0; i < itemCount; i++) {
+            for (int r = minRow[i]; r <= maxRow[i]; r++) {
+                for (int c = minCol[i]; c <= maxCol[i]; c++) {
+                    cellIds[cellFill[r * cols + c]++] = i;
+                }
+            }
+        }
+
+        playerMinCol = col(player.hullMinX());
+        playerMaxCol = col(player.hullMaxX());
+        playerMinRow = row(player.hullMinY());
+        playerMaxRow = row(player.hullMaxY());
+    }
+
+    // Najmniejszy indeks żywego wroga przecinającego prostokąt (-1 - brak). Nie zmienia stanu
+    // siatki (wróg w kilku komórkach nie zmienia minimum, więc nie trzeba usuwać duplikatów),
+    // więc wiele wątków może pytać naraz
+    int firstEnemyHit(float x, float y, float w, float h, EnemyStore enemies) {
+        int c0 = col(x);
+        int c1 = col(x + w);
+        int r0 = row(y);
+        int r1 = row(y + h);
+        int best = Integer.MAX_VALUE;
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int id = cellIds[k];
+                    if (id < best && enemies.isAlive(id) && Collision.rectsIntersect(x, y, w, h,
+                            enemies.left(id), enemies.top(id), enemies.width(id), enemies.height(id))) {
+                        best = id;
+                    }
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    // Czy prostokąt leży w komórkach zajmowanych przez statek gracza
+    boolean touchesPlayer(float x, float y, float w, float h) {
+        return col(x) <= playerMaxCol && col(x + w) >= playerMinCol
+                && row(y) <= playerMaxRow && row(y + h) >= playerMinRow;
+    }
+
+    private int col(float x) {
+        int c = (int) (x / CELL_SIZE);
+        return c < 0 ? 0 : (c >= cols ? cols - 1 : c);
+    }
+
+    private int row(float y) {
+        int r = (int) (y / CELL_SIZE);
+        return r < 0 ? 0 : (r >= rows ? rows - 1 : r);
+    }
+}
+
+// Profiler czasu faz ticka i klatki. Dla każdej fazy trzyma ostatnie WINDOW próbek
+// w pierścieniu oraz histogram o stałych kubełkach (log-liniowych, ok. 12% dokładności),
+// z którego liczone są p50/p99. Nic nie alokuje, a wyłączony kosztuje tylko sprawdzenie flagi.
+final class FrameProfiler {
+    static final int INPUT = 0;
+    static final int BULLETS = 1;
+    static final int COLLISION = 2;
+    static final int POWER_UPS = 3;
+    static final int EXPLOSIONS = 4;
+    static final int ENEMIES = 5;
+    static final int TICK = 6;
+    static final int PAINT = 7;
+    static final int FRAME = 8;
+    static final int PHASES = 9;
+    static final String[] NAMES = {
+        "wejście", "pociski", "kolizje", "ulepszenia", "wybuchy", "wrogowie", "tick", "rysowanie", "klatka"
+    };
+
+    static final int WINDOW = 256;
+    // Kubełki: 0..15 ns liniowo, potem 8 kubełków na każdą potęgę dwójki
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = LINEAR + (40 - 4) * SUB_BUCKETS;
+
+    private volatile boolean enabled;
+    private final long[][] samples = new long[PHASES][WINDOW];
+    private final int[] next = new int[PHASES];
+    private final int[] filled = new int[PHASES];
+    private final int[][] counts = new int[PHASES][BUCKETS];
+    // Czasy faz bieżącego ticka (faza może być mierzona kilka razy w jednym ticku)
+    private final long[] pending = new long[PHASES];
+    private long pendingInput;
+    private long lastFrame;
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    // Włączenie zaczyna pomiary od zera, aby nie pokazywać starych danych
+    void setEnabled(boolean enabled) {
+        if (enabled && !this.enabled) {
+            for (int phase = 0; phase < PHASES; phase++) {
+                next[phase] = 0;
+                filled[phase] = 0;
+                pending[phase] = 0;
+                Arrays.fill(counts[phase], 0);
+            }
+            pendingInput = 0;
+            lastFrame = 0;
+        }
+        this.enabled = enabled;
+    }
+
+    // Początek pomiaru (0, gdy profiler jest wyłączony)
+    long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    // Dolicza czas od start do teraz do fazy bieżącego ticka i zwraca "teraz"
+    long lap(int phase, long start) {
+        if (!enabled) return 0;
+        long now = System.nanoTime();
+        pending[phase] += now - start;
+        return now;
+    }
+
+    // Czas zastosowania wejścia zebranego od poprzedniego ticka
+    void addInput(long start) {
+        if (!enabled) return;
+        pendingInput += System.nanoTime() - start;
+    }
+
+    // Koniec ticka: zapisujemy zebrane czasy faz oraz czas całego ticka
+    void endTick(long tickStart) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        pending[INPUT] = pendingInput;
+        pendingInput = 0;
+        for (int phase = INPUT; phase <= ENEMIES; phase++) {
+            record(phase, pending[phase]);
+            pending[phase] = 0;
+        }
+        record(TICK, now - tickStart);
+    }
+
+    // Koniec rysowania klatki: czas rysowania i odstęp od poprzedniej klatki
+    void endFrame(long paintStart) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        record(PAINT, now - paintStart);
+        if (lastFrame != 0) {
+            record(FRAME, now - lastFrame);
+        }
+        lastFrame = now;
+    }
+
+    private void record(int phase, long nanos) {
+        int i = next[phase];
+        if (filled[phase] == WINDOW) {
+            counts[phase][bucket(samples[phase][i])]--;
+        } else {
+            filled[phase]++;
+        }
+        samples[phase][i] = nanos;
+        counts[phase][bucket(nanos)]++;
+        next[phase] = (i + 1) % WINDOW;
+    }
+
+    // Percentyl (0..1) w ns z histogramu okna - górna granica kubełka, nie więcej niż max
+    long percentile(int phase, double q) {
+        int n = filled[phase];
+        if (n == 0) return 0;
+        int target = Math.max(1, (int) Math.ceil(q * n));
+        int seen = 0;
+        int[] c = counts[phase];
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += c[i];
+            if (seen >= target) {
+                return Math.min(bucketUpper(i), max(phase));
+            }
+        }
+        return max(phase);
+    }
+
+    long max(int phase) {
+        long max = 0;
+        long[] s = samples[phase];
+        for (int i = 0; i < filled[phase]; i++) {
+            if (s[i] > max) max = s[i];
+        }
+        return max;
+    }
+
+    private static int bucket(long nanos) {
+        if (nanos < LINEAR) return (int) Math.max(0, nanos);
+        int exp = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exp - 3)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, LINEAR + (exp - 4) * SUB_BUCKETS + sub);
+    }
+
+    private static long bucketUpper(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int exp = (bucket - LINEAR) / SUB_BUCKETS + 4;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - 3)) - 1;
+    }
+}
+
+// Efekty czasowe świata gry na jednym zegarze ticków: wzmocnione strzelanie, tarcza,
+// nietykalność, odliczanie, powrót statku do pozycji "stand" i zamknięcie gry.
+// Każdy rodzaj efektu ma jeden termin - ponowne zaplanowanie przesuwa go (zamiast dokładać
+// kolejny Timer), a odwołanie go czyści; oba są O(1). Zegar stoi w czasie pauzy, więc
+// efekty pauzują razem z grą. Nie ma tu wątków ani Timerów - wszystko dzieje się w step().
+final class EffectScheduler {
+    enum Effect {
+        FIRE_RATE,
+        SHIELD,
+        INVULNERABILITY,
+        COUNTDOWN,
+        STAND,
+        GAME_OVER
+    }
+
+    private static final long NONE = Long.MAX_VALUE;
+    private static final Effect[] EFFECTS = Effect.values();
+
+    private final long[] due = new long[EFFECTS.length];
+    private final Runnable[] handlers = new Runnable[EFFECTS.length];
+    // Najbliższy termin (może być wcześniejszy od faktycznego po odwołaniu efektu)
+    private long nextDue = NONE;
+    private long now;
+
+    EffectScheduler() {
+        Arrays.fill(due, NONE);
+    }
+
+    // Reakcja na upłynięcie czasu efektu
+    void on(Effect effect, Runnable handler) {
+        handlers[effect.ordinal()] = handler;
+    }
+
+    // Efekt za ticks ticków; jeśli był już zaplanowany - nowy termin zastępuje stary
+    void schedule(Effect effect, int ticks) {
+        long at = now + Math.max(1, ticks);
+        due[effect.ordinal()] = at;
+        if (at < nextDue) {
+            nextDue = at;
+        }
+    }
+
+    void cancel(Effect effect) {
+        due[effect.ordinal()] = NONE;
+    }
+
+    boolean isScheduled(Effect effect) {
+        return due[effect.ordinal()] != NONE;
+    }
+
+    // Ticki zegara efektów (nie rosną w czasie pauzy)
+    long now() {
+        return now;
+    }
+
+    // Kolejny tick: uruchamia efekty, których czas minął (w kolejności z Effect)
+    void advance() {
+        now++;
+        if (now < nextDue) return;
+        for (int i = 0; i < due.length; i++) {
+            if (due[i] <= now) {
+                due[i] = NONE;
+                if (handlers[i] != null) {
+                    handlers[i].run();
+                }
+            }
+        }
+        // Obsługa mogła zaplanować efekty ponownie
+        nextDue = NONE;
+        for (long at : due) {
+            nextDue = Math.min(nextDue, at);
+        }
+    }
+}
+
+// Harmonogram strzałów wrogów: koło czasowe (timing wheel) indeksowane numerem ticka
+// strzelania (własny licznik - stoi w czasie odliczania przed startem, kiedy wrogowie nie strzelają).
+// Każdy żywy wróg ma jeden wpis w szczelinie ticka, w którym strzeli; po strzale wraca do
+// koła po swoim odstępie (EnemyBulletType.fireDelay). Pierwsze strzały wrogów danego typu
+// są rozłożone równo na cały odstęp, więc zamiast jednej salwy co kilka sekund pociski
+// pojawiają się po kilka w każdym ticku. Nadmiar ponad limit strzałów na tick przechodzi
+// na początek następnego ticka. Listy w szczelinach są tablicami indeksów - bez alokacji.
+final class FireScheduler {
+    static final int DEFAULT_SHOTS_PER_TICK = 4;
+
+    private final GameWorld world;
+    private EnemyStore enemies = new EnemyStore();
+    // Szczeliny koła: pierwszy i ostatni wróg (indeks w enemies) albo -1; next[i] - kolejny wróg
+    private int[] head = {-1};
+    private int[] tail = {-1};
+    private int mask = 0;
+    private int[] next = new int[0];
+    // Odstęp między strzałami w tickach dla każdego typu pocisku
+    private final int[] periodTicks = new int[EnemyBulletType.values().length];
+    private int shotsPerTick = DEFAULT_SHOTS_PER_TICK;
+    // Bieżący tick strzelania
+    private long now;
+    // Liczniki diagnostyczne
+    private long shots;
+    private long deferredTicks;
+
+    FireScheduler(GameWorld world) {
+        this.world = world;
+    }
+
+    void setShotsPerTick(int limit) {
+        shotsPerTick = Math.max(1, limit);
+    }
+
+    int shotsPerTick() {
+        return shotsPerTick;
+    }
+
+    // Liczba oddanych strzałów wrogów
+    long shots() {
+        return shots;
+    }
+
+    // Liczba ticków, w których limit przesunął część strzałów na później
+    long deferredTicks() {
+        return deferredTicks;
+    }
+
+    // Nowy zestaw wrogów (nowy poziom): pierwsze strzały rozłożone równo na odstęp każdego typu
+    void reset(EnemyStore enemies) {
+        this.enemies = enemies;
+        EnemyBulletType[] types = EnemyBulletType.values();
+        int maxPeriod = 1;
+        for (EnemyBulletType type : types) {
+            periodTicks[type.ordinal()] = world.ticksFor(type.fireDelay);
+            maxPeriod = Math.max(maxPeriod, periodTicks[type.ordinal()]);
+        }
+        // Koło musi objąć najdłuższy odstęp, aby wpisy z różnych okrążeń się nie mieszały
+        int size = Integer.highestOneBit(maxPeriod) << 1;
+        if (head.length != size) {
+            head = new int[size];
+            tail = new int[size];
+        }
+        mask = size - 1;
+        Arrays.fill(head, -1);
+        Arrays.fill(tail, -1);
+        if (next.length < enemies.size()) {
+            next = new int[enemies.size()];
+        }
+
+        // Bossowie strzelają według własnych wzorców (BossPatterns), nie z koła
+        int[] count = new int[types.length];
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.isAlive(i) && !enemies.kind(i).isBoss()) count[enemies.kind(i).bulletType.ordinal()]++;
+        }
+        int[] seen = new int[types.length];
+        for (int i = 0; i < enemies.size(); i++) {
+            if (!enemies.isAlive(i) || enemies.kind(i).isBoss()) continue;
+            int t = enemies.kind(i).bulletType.ordinal();
+            int k = ++seen[t];
+            schedule(i, now + Math.max(1, (long) periodTicks[t] * k / count[t]));
+        }
+    }
+
+    // Kolejny tick: strzały zaplanowane na niego (najwyżej shotsPerTick); zwraca liczbę strzelających
+    int fire() {
+        now++;
+        int slot = (int) (now & mask);
+        int budget = shotsPerTick;
+        int shooters = 0;
+        int i = head[slot];
+        while (i != -1 && budget > 0) {
+            int following = next[i];
+            // Zestrzelony wróg po prostu wypada z koła
+            if (enemies.isAlive(i)) {
+                enemies.shoot(i, world.bullets);
+                shooters++;
+                budget--;
+                schedule(i, now + periodTicks[enemies.kind(i).bulletType.ordinal()]);
+            }
+            i = following;
+        }
+        if (i != -1) {
+            // Limit wyczerpany - reszta szczeliny idzie na początek następnego ticka
+            int nextSlot = (slot + 1) & mask;
+            next[tail[slot]] = head[nextSlot];
+            if (head[nextSlot] == -1) {
+                tail[nextSlot] = tail[slot];
+            }
+            head[nextSlot] = i;
+            deferredTicks++;
+        }
+        head[slot] = -1;
+        tail[slot] = -1;
+        shots += shooters;
+        return shooters;
+    }
+
+    private void schedule(int i, long due) {
+        int slot = (int) (due & mask);
+        next[i] = -1;
+        if (tail[slot] == -1) {
+            head[slot] = i;
+        } else {
+            next[tail[slot]] = i;
+        }
+        tail[slot] = i;
+    }
+}
+
+// Strzelanie bossów według wzorców (BulletPattern). Każdy boss ma fazy zależne od zdrowia;
+// w fazie strzela po kolei jej wzorcami, każdym przez podaną liczbę salw. Kierunki pocisków
+// pochodzą z tablic cosinusów i sinusów liczonych raz, a pociski z puli BulletStore, więc
+// nawet setki pocisków w ticku nie wywołują Math.sin/cos ani nie alokują.
+final class BossPatterns {
+    static final int ANGLES = 1024; // potęga dwójki
+    static final int MASK = ANGLES - 1;
+    static final int DOWN = ANGLES / 4;
+    private static final float[] COS = new float[ANGLES];
+    private static final float[] SIN = new float[ANGLES];
+
+    static {
+        for (int i = 0; i < ANGLES; i++) {
+            double angle = i * (2 * Math.PI / ANGLES);
+            COS[i] = (float) Math.cos(angle);
+            SIN[i] = (float) Math.sin(angle);
+        }
+    }
+
+    // Faza bossa: obowiązuje, gdy zdrowie spadło do healthPercent procent (lub niżej)
+    static final class Phase {
+        final int healthPercent;
+        final BulletPattern[] patterns;
+
+        Phase(int healthPercent, BulletPattern... patterns) {
+            this.healthPercent = healthPercent;
+            this.patterns = patterns;
+        }
+    }
+
+    // Fazy bossów (od pełnego zdrowia w dół)
+    private static final Phase[] BOSS1_PHASES = {
+        new Phase(100, BulletPattern.FAN_5, BulletPattern.AIMED_BURST),
+        new Phase(60, BulletPattern.SWEEPING_FAN, BulletPattern.RING_16),
+        new Phase(25, BulletPattern.SPIRAL_2, BulletPattern.AIMED_BURST, BulletPattern.RING_16)
+    };
+    private static final Phase[] BOSS2_PHASES = {
+        new Phase(100, BulletPattern.RING_16, BulletPattern.AIMED_BURST),
+        new Phase(70, BulletPattern.SWEEPING_FAN, BulletPattern.RING_24),
+        new Phase(35, BulletPattern.SPIRAL_4, BulletPattern.AIMED_BURST, BulletPattern.RING_24)
+    };
+
+    static Phase[] phases(EnemyKind kind) {
+        switch (kind) {
+            case BOSS1:
+                return BOSS1_PHASES;
+            case BOSS2:
+                return BOSS2_PHASES;
+            default:
+                return null;
+        }
+    }
+
+    private final GameWorld world;
+    private EnemyStore enemies = new EnemyStore();
+    // Stan bossów (indeks - kolejny boss poziomu): numer wroga, faza, wzorzec w fazie,
+    // salwy oddane tym wzorcem, licznik salw (obrót wzorca), tick następnej salwy
+    private int[] enemy = new int[2];
+    private int[] phase = new int[2];
+    private int[] pattern = new int[2];
+    private int[] volleysFired = new int[2];
+    private int[] volley = new int[2];
+    private long[] nextVolley = new long[2];
+    private int bosses;
+    // Odstępy między salwami w tickach (indeks - numer wzorca)
+    private final int[] intervalTicks = new int[BulletPattern.values().length];
+    private static final BulletPattern[] PATTERNS = BulletPattern.values();
+    // Bieżący tick strzelania (jak w FireScheduler - stoi w czasie odliczania)
+    private long now;
+    private long bullets;
+
+    BossPatterns(GameWorld world) {
+        this.world = world;
+    }
+
+    // Liczba wystrzelonych pocisków (diagnostyka)
+    long bullets() {
+        return bullets;
+    }
+
+    // Nowy zestaw wrogów (nowy poziom): wyszukuje bossów
+    void reset(EnemyStore enemies) {
+        this.enemies = enemies;
+        for (BulletPattern p : PATTERNS) {
+            intervalTicks[p.ordinal()] = world.ticksFor(p.intervalMillis);
+        }
+        bosses = 0;
+        for (int i = 0; i < enemies.size(); i++) {
+            if (phases(enemies.kind(i)) == null) continue;
+            if (bosses == enemy.length) {
+                int n = bosses * 2;
+                enemy = Arrays.copyOf(enemy, n);
+                phase = Arrays.copyOf(phase, n);
+                pattern = Arrays.copyOf(pattern, n);
+                volleysFired = Arrays.copyOf(volleysFired, n);
+                volley = Arrays.copyOf(volley, n);
+                nextVolley = Arrays.copyOf(nextVolley, n);
+            }
+            enemy[bosses] = i;
+            phase[bosses] = 0;
+            pattern[bosses] = 0;
+            volleysFired[bosses] = 0;
+            volley[bosses] = 0;
+            nextVolley[bosses] = now + intervalTicks[phases(enemies.kind(i))[0].patterns[0].ordinal()];
+            bosses++;
+        }
+    }
+
+    // Kolejny tick: salwy bossów, na które przyszła pora; zwraca liczbę wystrzelonych pocisków
+    int fire() {
+        now++;
+        int fired = 0;
+        for (int b = 0; b < bosses; b++) {
+            int i = enemy[b];
+            if (!enemies.isAlive(i) || now < nextVolley[b]) continue;
+            Phase[] phases = phases(enemies.kind(i));
+            // Przejście do fazy odpowiadającej zdrowiu - wzorce fazy od początku
+            int p = phaseFor(phases, enemies.healthPercent(i));
+            if (p != phase[b]) {
+                phase[b] = p;
+                pattern[b] = 0;
+                volleysFired[b] = 0;
+            }
+            BulletPattern bp = phases[p].patterns[pattern[b]];
+            fired += emit(bp, volley[b], enemies.left(i) + enemies.width(i) / 2, enemies.top(i) + enemies.height(i), bp.bullets);
+            volley[b]++;
+            if (++volleysFired[b] >= bp.volleys) {
+                volleysFired[b] = 0;
+                pattern[b] = (pattern[b] + 1) % phases[p].patterns.length;
+                bp = phases[p].patterns[pattern[b]];
+            }
+            nextVolley[b] = now + intervalTicks[bp.ordinal()];
+        }
+        bullets += fired;
+        return fired;
+    }
+
+    // Ostatnia faza, której próg zdrowia już osiągnięto
+    private static int phaseFor(Phase[] phases, int healthPercent) {
+        int p = 0;
+        while (p + 1 < phases.length && healthPercent <= phases[p + 1].healthPercent) {
+            p++;
+        }
+        return p;
+    }
+
+    // Jedna salwa n pocisków wzorca z punktu (x, y); volley - numer salwy (obrót i kołysanie wzorca)
+    int emit(BulletPattern bp, int volley, float x, float y, int n) {
+        switch (bp.shape) {
+            case RING:
+            case SPIRAL: {
+                // Pociski (ramiona spirali) równo na okręgu, cały okrąg obrócony o spin na salwę
+                int base = DOWN + volley * bp.spin;
+                for (int k = 0; k < n; k++) {
+                    spawn(bp, x, y, base + k * ANGLES / n);
+                }
+                break;
+            }
+            case FAN: {
+                int swing = bp.spin == 0 ? 0 : triangle(volley * bp.spin, bp.spread / 2);
+                int first = DOWN + swing - bp.spread / 2;
+                int step = n > 1 ? bp.spread / (n - 1) : 0;
+                for (int k = 0; k < n; k++) {
+                    spawn(bp, x, y, first + k * step);
+                }
+                break;
+            }
+            case AIMED: {
+                // Kierunek do gracza z pierwiastka (bez atan2); rozrzut - obrót wektora o kąt z tablicy
+                Belka player = world.b;
+                float tx = player.x + player.width / 2f - x;
+                float ty = player.y + player.height / 2f - y;
+                float length = (float) Math.sqrt(tx * tx + ty * ty);
+                if (length < 1e-3f) {
+                    tx = 0;
+                    ty = 1;
+                } else {
+                    tx /= length;
+                    ty /= length;
+                }
+                int step = n > 1 ? bp.spread / (n - 1) : 0;
+                int first = -bp.spread / 2;
+                for (int k = 0; k < n; k++) {
+                    int a = (first + k * step) & MASK;
+                    float dx = tx * COS[a] - ty * SIN[a];
+                    float dy = tx * SIN[a] + ty * COS[a];
+                    world.bullets.spawnEnemy(bp.bulletType, x - 4, y).setVelocity(dx * bp.speed, dy * bp.speed);
+                }
+                break;
+            }
+        }
+        return n;
+    }
+
+    private void spawn(BulletPattern bp, float x, float y, int angle) {
+        int a = angle & MASK;
+        world.bullets.spawnEnemy(bp.bulletType, x - 4, y).setVelocity(COS[a] * bp.speed, SIN[a] * bp.speed);
+    }
+
+    // Fala trójkątna o amplitudzie amplitude: 0, +amplitude, 0, -amplitude, 0 ...
+    private static int triangle(int t, int amplitude) {
+        if (amplitude <= 0) return 0;
+        int period = 4 * amplitude;
+        int p = Math.floorMod(t, period);
+        if (p < amplitude) return p;
+        if (p < 3 * amplitude) return 2 * amplitude - p;
+        return p - 4 * amplitude;
+    }
+}
+
+// Migawka świata do rysowania: statek, żywi wrogowie, pociski, ulepszenia, wybuchy, iskry,
+// HUD i nakładki - same liczby i referencje do gotowych obrazów. Wypełnia ją symulacja
+// (pod world.lock) na końcu kroku; po publikacji w SnapshotBuffer aż do kolejnego użycia
+// bufora tylko ją czytamy, więc rysowanie nie potrzebuje blokady. Tablice rosną tylko wtedy,
+// gdy zabraknie miejsca, więc kopiowanie co tick nie tworzy obiektów.
+final class WorldSnapshot {
+    // Statek (visible = false: mignięcie w czasie nietykalności)
+    Image shipImage;
+    int shipX, shipY, shipWidth, shipHeight;
+    boolean shipVisible, shieldActive;
+
+    // Wrogowie: lewy górny róg na planszy, rozmiar, zdrowie bossa w [0, 1] (-1 - zwykły wróg)
+    int enemyCount;
+    Image[] enemyImage = new Image[16];
+    float[] enemyLeft = new float[16];
+    float[] enemyTop = new float[16];
+    int[] enemyWidth = new int[16];
+    int[] enemyHeight = new int[16];
+    double[] enemyHealth = new double[16];
+    int enemiesTotal;
+
+    // Pociski: pozycja z poprzedniego i bieżącego ticka (do interpolacji) i rozmiar
+    int bulletCount;
+    Image[] bulletImage = new Image[256];
+    float[] bulletPrevX = new float[256];
+    float[] bulletPrevY = new float[256];
+    float[] bulletX = new float[256];
+    float[] bulletY = new float[256];
+    int[] bulletWidth = new int[256];
+    int[] bulletHeight = new int[256];
+
+    // Ulepszenia (spadają pionowo, więc interpolujemy tylko y)
+    int powerUpCount;
+    Image[] powerUpImage = new Image[8];
+    float[] powerUpX = new float[8];
+    float[] powerUpPrevY = new float[8];
+    float[] powerUpY = new float[8];
+
+    // Wybuchy: lewy górny róg i wiek (wybiera klatkę arkusza)
+    int explosionCount;
+    int[] explosionX = new int[64];
+    int[] explosionY = new int[64];
+    long[] explosionAge = new long[64];
+
+    // Iskry: pozycja z poprzedniego i bieżącego kroku oraz odcień (indeks koloru)
+    int sparkCount;
+    float[] sparkPrevX = new float[512];
+    float[] sparkPrevY = new float[512];
+    float[] sparkX = new float[512];
+    float[] sparkY = new float[512];
+    byte[] sparkShade = new byte[512];
+
+    // HUD i nakładki
+    int score, level, lives, maxLevels;
+    boolean gameOver, paused, countdownActive;
+    int countdown;
+
+    // Kopiuje stan świata (wywoływane w wątku symulacji, pod world.lock)
+    void capture(GameWorld world) {
+        world.b.capture(this);
+        world.enemies.capture(this);
+        world.bullets.capture(this);
+        world.powerUps.capture(this);
+        world.explosions.capture(this);
+        score = world.score;
+        level = world.currentLevel;
+        lives = world.lives;
+        maxLevels = world.maxLevels;
+        gameOver = world.gameOver;
+        paused = world.isPaused;
+        countdownActive = world.countdownActive;
+        countdown = world.countdown;
+    }
+
+    void reserveEnemies(int n) {
+        if (n <= enemyLeft.length) return;
+        n = Math.max(n, enemyLeft.length * 2);
+        enemyImage = Arrays.copyOf(enemyImage, n);
+        enemyLeft = Arrays.copyOf(enemyLeft, n);
+        enemyTop = Arrays.copyOf(enemyTop, n);
+        enemyWidth = Arrays.copyOf(enemyWidth, n);
+        enemyHeight = Arrays.copyOf(enemyHeight, n);
+        enemyHealth = Arrays.copyOf(enemyHealth, n);
+    }
+
+    void reserveBullets(int n) {
+        if (n <= bulletX.length) return;
+        n = Math.max(n, bulletX.length * 2);
+        bulletImage = Arrays.copyOf(bulletImage, n);
+        bulletPrevX = Arrays.copyOf(bulletPrevX, n);
+        bulletPrevY = Arrays.copyOf(bulletPrevY, n);
+        bulletX = Arrays.copyOf(bulletX, n);
+        bulletY = Arrays.copyOf(bulletY, n);
+        bulletWidth = Arrays.copyOf(bulletWidth, n);
+        bulletHeight = Arrays.copyOf(bulletHeight, n);
+    }
+
+    void reservePowerUps(int n) {
+        if (n <= powerUpX.length) return;
+        n = Math.max(n, powerUpX.length * 2);
+        powerUpImage = Arrays.copyOf(powerUpImage, n);
+        powerUpX = Arrays.copyOf(powerUpX, n);
+        powerUpPrevY = Arrays.copyOf(powerUpPrevY, n);
+        powerUpY = Arrays.copyOf(powerUpY, n);
+    }
+
+    void reserveExplosions(int explosions, int sparks) {
+        if (explosions > explosionX.length) {
+            int n = Math.max(explosions, explosionX.length * 2);
+            explosionX = Arrays.copyOf(explosionX, n);
+            explosionY = Arrays.copyOf(explosionY, n);
+            explosionAge = Arrays.copyOf(explosionAge, n);
+        }
+        if (sparks > sparkX.length) {
+            int n = Math.max(sparks, sparkX.length * 2);
+            sparkPrevX = Arrays.copyOf(sparkPrevX, n);
+            sparkPrevY = Arrays.copyOf(sparkPrevY, n);
+            sparkX = Arrays.copyOf(sparkX, n);
+            sparkY = Arrays.copyOf(sparkY, n);
+            sparkShade = Arrays.copyOf(sparkShade, n);
+        }
+    }
+
+    // Rysowanie sprite'ów (alpha - interpolacja między poprzednim a bieżącym tickiem):
+    // statek, wrogowie z paskami zdrowia bossów, wybuchy i iskry, pociski, ulepszenia
+    void draw(Graphics2D g2d, SpriteSheet explosionSheet, float alpha) {
+        if (shipVisible) {
+            DisplaySprites.draw(g2d, shipImage, shipX, shipY, shipWidth, shipHeight);
+            if (shieldActive) {
+                g2d.setColor(Belka.SHIELD_COLOR);
+                g2d.fillOval(shipX - 10, shipY - 10, shipWidth + 20, shipHeight + 20);
+            }
+        }
+
+        for (int i = 0; i < enemyCount; i++) {
+            int left = (int) enemyLeft[i];
+            int top = (int) enemyTop[i];
+            DisplaySprites.draw(g2d, enemyImage[i], left, top, enemyWidth[i], enemyHeight[i]);
+            if (enemyHealth[i] >= 0) {
+                int barY = (int) (enemyTop[i] - 10);
+                g2d.setColor(Color.RED);
+                g2d.fillRect(left, barY, enemyWidth[i], 5);
+                g2d.setColor(Color.GREEN);
+                g2d.fillRect(left, barY, (int) (enemyWidth[i] * enemyHealth[i]), 5);
+            }
+        }
+
+        for (int i = 0; i < explosionCount; i++) {
+            Image frame = explosionSheet.frameAt(explosionAge[i]);
+            DisplaySprites.draw(g2d, frame, explosionX[i], explosionY[i], ExplosionSystem.SIZE, ExplosionSystem.SIZE);
+        }
+        for (int i = 0; i < sparkCount; i++) {
+            DisplaySprites.draw(g2d, ExplosionSystem.SPARK_IMAGES[sparkShade[i]], sparkDrawX(i, alpha), sparkDrawY(i, alpha),
+                    ExplosionSystem.SPARK_SIZE, ExplosionSystem.SPARK_SIZE);
+        }
+
+        for (int i = 0; i < bulletCount; i++) {
+            DisplaySprites.draw(g2d, bulletImage[i], bulletDrawX(i, alpha), bulletDrawY(i, alpha),
+                    bulletWidth[i], bulletHeight[i]);
+        }
+
+        for (int i = 0; i < powerUpCount; i++) {
+            DisplaySprites.draw(g2d, powerUpImage[i], (int) powerUpX[i], powerUpDrawY(i, alpha),
+                    PowerUpStore.SIZE, PowerUpStore.SIZE);
+        }
+    }
+
+    // Zaznacza kafelki, na których draw() narysuje sprite'y
+    void mark(DirtyTiles tiles, float alpha) {
+        // Z zapasem na tarczę (owal większy o 10 pikseli z każdej strony)
+        tiles.mark(shipX - 10, shipY - 10, shipWidth + 20, shipHeight + 20);
+        // Wrogowie z paskiem zdrowia bossa 10 pikseli nad samolotem
+        for (int i = 0; i < enemyCount; i++) {
+            tiles.mark((int) enemyLeft[i], (int) enemyTop[i] - 10, enemyWidth[i], enemyHeight[i] + 10);
+        }
+        for (int i = 0; i < explosionCount; i++) {
+            tiles.mark(explosionX[i], explosionY[i], ExplosionSystem.SIZE, ExplosionSystem.SIZE);
+        }
+        for (int i = 0; i < sparkCount; i++) {
+            tiles.mark(sparkDrawX(i, alpha), sparkDrawY(i, alpha), ExplosionSystem.SPARK_SIZE, ExplosionSystem.SPARK_SIZE);
+        }
+        for (int i = 0; i < bulletCount; i++) {
+            tiles.mark(bulletDrawX(i, alpha), bulletDrawY(i, alpha), bulletWidth[i], bulletHeight[i]);
+        }
+        for (int i = 0; i < powerUpCount; i++) {
+            tiles.mark((int) powerUpX[i], powerUpDrawY(i, alpha), PowerUpStore.SIZE, PowerUpStore.SIZE);
+        }
+    }
+
+    private int bulletDrawX(int i, float alpha) {
+        return (int) (bulletPrevX[i] + (bulletX[i] - bulletPrevX[i]) * alpha);
+    }
+
+    private int bulletDrawY(int i, float alpha) {
+        return (int) (bulletPrevY[i] + (bulletY[i] - bulletPrevY[i]) * alpha);
+    }
+
+    private int sparkDrawX(int i, float alpha) {
+        return (int) (sparkPrevX[i] + (sparkX[i] - sparkPrevX[i]) * alpha);
+    }
+
+    private int sparkDrawY(int i, float alpha) {
+        return (int) (sparkPrevY[i] + (sparkY[i] - sparkPrevY[i]) * alpha);
+    }
+
+    private int powerUpDrawY(int i, float alpha) {
+        return (int) (powerUpPrevY[i] + (powerUpY[i] - powerUpPrevY[i]) * alpha);
+    }
+}
+
+// Potrójny bufor migawek między wątkiem symulacji a wątkiem rysującym.
+// Każda strona ma zawsze własny bufor: symulacja wypełnia swój i wymienia go z "gotowym",
+// rysowanie wymienia swój z gotowym tylko wtedy, gdy pojawiła się nowsza migawka.
+// Wymiana to jedna operacja atomowa, więc nikt nie czeka i nikt nie czyta bufora w trakcie
+// zapisu. Zapisuje jeden wątek naraz (pod world.lock), czyta jeden wątek rysujący.
+final class SnapshotBuffer {
+    // Stan "gotowego" bufora: bity 0-1 - indeks, bit 2 - migawka jeszcze nie odebrana
+    private static final int INDEX = 3;
+    private static final int FRESH = 4;
+
+    private final WorldSnapshot[] buffers = {new WorldSnapshot(), new WorldSnapshot(), new WorldSnapshot()};
+    private final AtomicInteger ready = new AtomicInteger(1);
+    // Bufor zapisywany przez symulację i bufor czytany przez rysowanie
+    private int back = 0;
+    private int front = 2;
+
+    // Bufor do wypełnienia przed publish()
+    WorldSnapshot back() {
+        return buffers[back];
+    }
+
+    // Wypełniony bufor staje się gotowym; poprzedni gotowy (jeśli nikt go nie odebrał) wraca do zapisu
+    void publish() {
+        back = ready.getAndSet(back | FRESH) & INDEX;
+    }
+
+    // Najnowsza kompletna migawka (ta sama, co poprzednio, jeśli symulacja nic nie opublikowała)
+    WorldSnapshot latest() {
+        if ((ready.get() & FRESH) != 0) {
+            front = ready.getAndSet(front) & INDEX;
+        }
+        return buffers[front];
+    }
+}
+
+// Bufor wejścia między słuchaczami Swinga (EDT) a symulacją. Słuchacze myszy i klawiatury
+// tylko zapisują tu ostatni stan - bez blokady świata i bez żadnych skutków w grze;
+// symulacja odczytuje go raz na tick (GameWorld.step()). Ruchy myszy między tickami zlewają się
+// w jedną pozycję, więc mysz z odświeżaniem 1000 Hz nie dokłada pracy ponad jeden odczyt na tick.
+final class InputBuffer {
+    // Brak ruchu myszy od poprzedniego odczytu
+    static final int NO_MOVE = Integer.MIN_VALUE;
+
+    // Ostatnia pozycja x myszy od poprzedniego odczytu
+    private final AtomicInteger mouseX = new AtomicInteger(NO_MOVE);
+    // Stan przycisku myszy oraz liczba jego wciśnięć i puszczeń od poprzedniego odczytu
+    private volatile boolean fireHeld;
+    private final AtomicInteger firePresses = new AtomicInteger();
+    private final AtomicInteger fireReleases = new AtomicInteger();
+    // Naciśnięcia pauzy (Esc), przełączenia profilera (F3) i puszczenia klawiszy od poprzedniego odczytu
+    private final AtomicInteger pausePresses = new AtomicInteger();
+    private final AtomicInteger profilerToggles = new AtomicInteger();
+    private final AtomicInteger keyReleases = new AtomicInteger();
+
+    // ---------------- Zapis (wątek EDT) ----------------
+
+    void moveMouse(int x) {
+        mouseX.set(x);
+    }
+
+    void pressFire() {
+        fireHeld = true;
+        firePresses.incrementAndGet();
+    }
+
+    void releaseFire() {
+        fireHeld = false;
+        fireReleases.incrementAndGet();
+    }
+
+    void pressPause() {
+        pausePresses.incrementAndGet();
+    }
+
+    void toggleProfiler() {
+        profilerToggles.incrementAndGet();
+    }
+
+    void releaseKey() {
+        keyReleases.incrementAndGet();
+    }
+
+    // ---------------- Odczyt (symulacja, raz na tick) ----------------
+
+    // Pozycja myszy od poprzedniego odczytu albo NO_MOVE
+    int takeMouseX() {
+        return mouseX.getAndSet(NO_MOVE);
+    }
+
+    boolean fireHeld() {
+        return fireHeld;
+    }
+
+    int takeFirePresses() {
+        return firePresses.getAndSet(0);
+    }
+
+    int takeFireReleases() {
+        return fireReleases.getAndSet(0);
+    }
+
+    int takePausePresses() {
+        return pausePresses.getAndSet(0);
+    }
+
+    int takeProfilerToggles() {
+        return profilerToggles.getAndSet(0);
+    }
+
+    int takeKeyReleases() {
+        return keyReleases.getAndSet(0);
+    }
+}
+
+// Model świata gry: cały stan (statek, wrogowie, pociski, ulepszenia, wybuchy, poziomy,
+// punkty, życia) i zasady gry - bez zależności od komponentów Swing/AWT.
+// Świat zmienia się tylko przez step() i metody wejścia, więc można go symulować
+// bez ekranu (np. tysiące ticków na sekundę). Plansza jest tylko widokiem tego modelu.
+class GameWorld {
+    static final int GAME_DELAY = 15; // bazowa długość kroku (ms), do której dobrano prędkości
+    private static final int SHOOT_DELAY = 200;
+    private static final int STAND_DELAY = 300;
+    private static final int ENEMY_MOVE_DELAY = 30;
+    private static final int COUNTDOWN_DELAY = 1000;
+    private static final int FIRE_RATE_DURATION = 4000;
+
+    // Blokada chroniącą stan świata, gdy korzysta z niego kilka wątków (pętla gry, EDT)
+    final Object lock = new Object();
+
+    // Rozmiar planszy (ustawiany przez widok przez resize())
+    int width;
+    int height;
+
+    // Długość kroku symulacji i mnożnik prędkości względem GAME_DELAY
+    final double tickMillis;
+    final float motionScale;
+
+    // Ziarno i generator liczb losowych - to samo ziarno daje tę samą rozgrywkę
+    final long seed;
+    final Random random;
+    // Liczba wykonanych kroków (także w czasie pauzy); z niej liczony jest czas symulacji
+    long stepCount = 0;
+    // Zapis wejścia do pliku (null, jeśli nie nagrywamy)
+    private SessionRecorder recorder;
+    // Pomiar czasu faz ticka (włączany w widoku klawiszem F3)
+    final FrameProfiler profiler = new FrameProfiler();
+    // Licznik kolizji (trafienia wrogów i gracza, zebrane ulepszenia) - do zdarzeń JFR
+    long collisions = 0;
+
+    Belka b;                          // Statek
+    EnemyStore enemies;               // Wrogie samoloty
+    Formation formation;              // Wspólny ruch wrogów poziomu
+    final FireScheduler fireScheduler;// Kiedy który wróg strzela
+    final BossPatterns bossPatterns;  // Wzorce strzałów bossów
+    BulletStore bullets;              // Pociski
+    final BulletStage bulletStage;    // Ruch i kolizje pocisków (równolegle przy dużej liczbie)
+    final PowerUpStore powerUps;      // Ulepszenia
+    final ExplosionSystem explosions; // Wybuchy i iskry
+    // Siatka przestrzenna do wykrywania kolizji (przebudowywana co tick)
+    final SpatialGrid grid = new SpatialGrid();
+    // Migawki stanu dla widoku (null - nikt nie rysuje, np. powtórka bez okna)
+    private SnapshotBuffer snapshots;
+    // Wejście z myszy i klawiatury zebrane od poprzedniego ticka
+    final InputBuffer input = new InputBuffer();
+    // Rozmiar GIF-a wybuchu - potrzebny do ustawienia wybuchu
+    final int explosionWidth;
+    final int explosionHeight;
+
+    // Liczba żyć
+    int lives = 3;
+
+    int score = 0;
+    long lastHitTime = 0;
+    int comboCount = 0;
+    boolean gameOver = false;
+    int currentLevel = 1;            // Zaczynamy od 1-go poziomu
+    final int maxLevels;
+    int bricksInLevel;
+    int bricksDestroyed = 0;
+
+    boolean isPaused = false;
+    int countdown = 3;        // Licznik (sekundy)
+    boolean countdownActive = true; // Pokazuje, czy odliczanie jest aktywne
+    private final int countdownTicks;
+
+    // Efekty czasowe (wzmocnione strzelanie, tarcza, nietykalność, odliczanie, "stand", koniec gry)
+    final EffectScheduler effects = new EffectScheduler();
+
+    // Licznik ticków symulacji (nie rośnie w czasie pauzy)
+    long tickCount = 0;
+
+    // Strzelanie gracza (ciągłe, gdy lewy przycisk myszy jest wciśnięty)
+    private boolean firing = false;
+    private boolean fireRateBoosted = false;
+    private long nextShotTick;
+    private final int shootTicks;
+    private final int fireRateTicks;
+
+    // Powrót statku do pozycji "stand"
+    private final int standTicks;
+    private int previousMouseX = -1;
+
+    // Poziomy
+    private List<LevelConfig> levelConfigs;
+
+    // Strzelanie i ruch wrogów
+    // Co ile ticków przeliczamy metryki (raz na sekundę)
+    private final int metricsTicks;
+    private int enemySpeed = 1;
+    private boolean levelInitialized = false;
+    private boolean powerUpDroppedThisLevel = false;
+
+    // Wątek w tle, który buduje następny poziom (wspólny dla wszystkich światów)
+    private static final ExecutorService LEVEL_PREFETCH = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "level-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<EnemyStore> prefetched;
+    private int prefetchedLevel;
+    private int prefetchedWidth;
+
+    // Wywoływane (w wątku symulacji) po zakończeniu gry, z komunikatem dla gracza
+    private Consumer<String> gameOverListener;
+    // Wywoływane, gdy po końcu gry minie czas z closeAfter() (np. zamknięcie okna)
+    private Runnable closeListener;
+
+    GameWorld(double tickRate) {
+        this(tickRate, new Random().nextLong());
+    }
+
+    GameWorld(double tickRate, long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+        tickMillis = 1000.0 / tickRate;
+        motionScale = (float) (tickMillis / GAME_DELAY);
+        shootTicks = ticksFor(SHOOT_DELAY);
+        standTicks = ticksFor(STAND_DELAY);
+        countdownTicks = ticksFor(COUNTDOWN_DELAY);
+        fireRateTicks = ticksFor(FIRE_RATE_DURATION);
+        metricsTicks = ticksFor(1000);
+
+        SpriteSheet explosionSheet = SpriteCache.sheet("boom3.gif");
+        explosionWidth = explosionSheet.width;
+        explosionHeight = explosionSheet.height;
+
+        b = new Belka(this, 360, 700);
+        enemies = new EnemyStore();
+        bullets = new BulletStore(this);
+        bulletStage = new BulletStage(this);
+        powerUps = new PowerUpStore();
+        explosions = new ExplosionSystem(this);
+        fireScheduler = new FireScheduler(this);
+        bossPatterns = new BossPatterns(this);
+
+        // Reakcje na koniec efektów czasowych
+        effects.on(EffectScheduler.Effect.FIRE_RATE, () -> fireRateBoosted = false);
+        effects.on(EffectScheduler.Effect.SHIELD, () -> b.deactivateShield());
+        effects.on(EffectScheduler.Effect.INVULNERABILITY, () -> b.endInvulnerability());
+        effects.on(EffectScheduler.Effect.COUNTDOWN, this::countdownStep);
+        effects.on(EffectScheduler.Effect.STAND, () -> b.setDirection("stand"));
+        effects.on(EffectScheduler.Effect.GAME_OVER, () -> {
+            if (closeListener != null) {
+                closeListener.run();
+            }
+        });
+        effects.schedule(EffectScheduler.Effect.COUNTDOWN, countdownTicks);
+
+        initializeLevelConfigs();
+        maxLevels = levelConfigs.size();
+    }
+
+    // Liczba ticków odpowiadająca podanemu czasowi (co najmniej 1)
+    int ticksFor(int millis) {
+        return Math.max(1, (int) Math.round(millis / tickMillis));
+    }
+
+    // Czas symulacji w ms - zależy tylko od liczby kroków, więc powtórka daje te same wyniki
+    long timeMillis() {
+        return (long) (stepCount * tickMillis);
+    }
+
+    void setGameOverListener(Consumer<String> listener) {
+        this.gameOverListener = listener;
+    }
+
+    void setCloseListener(Runnable listener) {
+        this.closeListener = listener;
+    }
+
+    // Po końcu gry: closeListener za podany czas (liczony zegarem efektów, więc bez Timera)
+    void closeAfter(int millis) {
+        effects.schedule(EffectScheduler.Effect.GAME_OVER, ticksFor(millis));
+    }
+
+    // Od teraz całe wejście jest zapisywane (z numerem kroku) do podanego pliku
+    void startRecording(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    // Kończy zapis: dopisuje liczbę kroków i skrót stanu, którym powtórka sprawdza zgodność
+    void stopRecording() {
+        if (recorder != null) {
+            recorder.finish(stepCount, stateHash());
+            recorder = null;
+        }
+    }
+
+    // Skrót stanu gry (do porównania nagrania z powtórką)
+    long stateHash() {
+        long h = seed;
+        h = h * 31 + stepCount;
+        h = h * 31 + tickCount;
+        h = h * 31 + score;
+        h = h * 31 + lives;
+        h = h * 31 + currentLevel;
+        h = h * 31 + bricksDestroyed;
+        h = h * 31 + Float.floatToIntBits(b.x);
+        h = h * 31 + bullets.liveCount();
+        for (int i = 0; i < enemies.size(); i++) {
+            h = h * 31 + Float.floatToIntBits(enemies.left(i));
+            h = h * 31 + Float.floatToIntBits(enemies.top(i));
+            h = h * 31 + (enemies.isAlive(i) ? 1 : 0);
+        }
+        return h;
+    }
+
+    // Zmiana rozmiaru planszy; pierwszy poziom tworzymy, gdy znamy już rozmiar
+    void resize(int width, int height) {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.RESIZE, width, height);
+        }
+        this.width = width;
+        this.height = height;
+        if (!levelInitialized && width > 0) {
+            initializeLevel(currentLevel);
+            levelInitialized = true;
+            publishSnapshot();
+        }
+    }
+
+    // Od teraz po każdym kroku publikujemy migawkę stanu do rysowania; zwraca bufor migawek
+    SnapshotBuffer snapshots() {
+        if (snapshots == null) {
+            snapshots = new SnapshotBuffer();
+            publishSnapshot();
+        }
+        return snapshots;
+    }
+
+    private void publishSnapshot() {
+        if (snapshots == null) return;
+        snapshots.back().capture(this);
+        snapshots.publish();
+    }
+
+    // Jeden krok symulacji; widok dostaje jego wynik jako migawkę (także w pauzie i po końcu gry)
+    void step() {
+        applyInput();
+        simulate();
+        publishSnapshot();
+    }
+
+    // Wejście zebrane od poprzedniego ticka, stosowane przed krokiem (z tym samym numerem
+    // kroku co zdarzenia, które przyszły między tickami - nagrania odtwarzają się tak samo).
+    // Kolejność: pauza, puszczenie klawisza, ostatnia pozycja myszy (jej kierunek wygrywa), strzelanie.
+    private void applyInput() {
+        for (int i = input.takeProfilerToggles(); i > 0; i--) {
+            profiler.setEnabled(!profiler.isEnabled());
+        }
+        long t = profiler.start();
+        for (int i = input.takePausePresses(); i > 0; i--) {
+            pressPause();
+        }
+        if (input.takeKeyReleases() > 0) {
+            releaseDirection();
+        }
+        int mouseX = input.takeMouseX();
+        if (mouseX != InputBuffer.NO_MOVE) {
+            movePlayer(mouseX);
+        }
+        // Liczy się stan przycisku po ostatnim zdarzeniu; wciśnięcie i puszczenie w jednym ticku
+        // nie strzela - pierwszy strzał i tak pada dopiero po SHOOT_DELAY
+        boolean pressed = input.takeFirePresses() > 0;
+        boolean released = input.takeFireReleases() > 0;
+        if (input.fireHeld()) {
+            if (pressed) {
+                startFiring();
+            }
+        } else if (released) {
+            stopFiring();
+        }
+        profiler.addInput(t);
+    }
+
+    private void simulate() {
+        stepCount++;
+        // Zegar efektów stoi w czasie pauzy; po końcu gry biegnie dalej (zamknięcie gry)
+        if (!isPaused) {
+            effects.advance();
+        }
+        if (isPaused || gameOver) return;
+        tickCount++;
+        long tickStart = profiler.start();
+        long t = tickStart;
+        TickEvent event = new TickEvent();
+        event.begin();
+        long spawnedBefore = bullets.spawned();
+        long collisionsBefore = collisions;
+
+        // Strzelanie gracza
+        if (firing && tickCount >= nextShotTick) {
+            shootBullet();
+            nextShotTick = tickCount + shootTicks;
+        }
+
+        t = profiler.lap(FrameProfiler.BULLETS, t);
+
+        grid.rebuild(enemies, b, width, height);
+        t = profiler.lap(FrameProfiler.COLLISION, t);
+        // Równolegle: ruch i wykrycie trafień w puli, potem skutki po kolei w tym wątku
+        boolean parallel = bulletStage.advance();
+        t = profiler.lap(FrameProfiler.BULLETS, t);
+        if (parallel) {
+            bulletStage.merge();
+        } else {
+            bulletStage.collideAll();
+        }
+        t = profiler.lap(FrameProfiler.COLLISION, t);
+        updatePowerUps();
+        t = profiler.lap(FrameProfiler.POWER_UPS, t);
+        updateExplosions();
+        t = profiler.lap(FrameProfiler.EXPLOSIONS, t);
+
+        moveEnemies();
+        enemyShoot();
+        profiler.lap(FrameProfiler.ENEMIES, t);
+
+        if (tickCount % metricsTicks == 0) {
+            bullets.sampleRates();
+        }
+
+        profiler.endTick(tickStart);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.step = stepCount;
+            event.bullets = bullets.liveCount();
+            event.enemies = enemies.size();
+            event.powerUps = powerUps.size();
+            event.explosions = explosions.size();
+            event.spawned = (int) (bullets.spawned() - spawnedBefore);
+            event.collisions = (int) (collisions - collisionsBefore);
+            event.commit();
+        }
+    }
+
+    // Odliczanie przed startem: co sekundę o jeden w dół (efekt planuje się ponownie)
+    private void countdownStep() {
+        countdown--;
+        if (countdown > 0) {
+            effects.schedule(EffectScheduler.Effect.COUNTDOWN, countdownTicks);
+        } else {
+            countdownActive = false;
+        }
+    }
+
+    // ---------------- Wejście (mysz i klawiatura) ----------------
+
+    void movePlayer(int mouseX) {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.MOVE, mouseX, 0);
+        }
+        if (isPaused || gameOver) return;
+
+        if (previousMouseX != -1) {
+            if (mouseX > previousMouseX) {
+                b.setDirection("right");
+            } else if (mouseX < previousMouseX) {
+                b.setDirection("left");
+            }
+        }
+        previousMouseX = mouseX;
+
+        float newX = mouseX - (b.width / 2f);
+        if (newX < 0) newX = 0;
+        if (newX + b.width > width) {
+            newX = width - b.width;
+        }
+        b.setX(newX);
+        // Powrót do pozycji "stand", gdy mysz przestanie się ruszać
+        effects.schedule(EffectScheduler.Effect.STAND, standTicks);
+    }
+
+    void startFiring() {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.FIRE_DOWN, 0, 0);
+        }
+        // Jeśli trwa odliczanie - nie strzelamy
+        if (countdownActive || firing) return;
+        // Pierwszy strzał po SHOOT_DELAY, tak jak przy starcie Timera
+        firing = true;
+        nextShotTick = tickCount + shootTicks;
+    }
+
+    void stopFiring() {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.FIRE_UP, 0, 0);
+        }
+        firing = false;
+    }
+
+    void pressPause() {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.PAUSE, 0, 0);
+        }
+        if (gameOver == false) {
+            togglePause();
+        }
+    }
+
+    void releaseDirection() {
+        if (recorder != null) {
+            recorder.record(stepCount, SessionRecorder.RELEASE, 0, 0);
+        }
+        b.setDirection("stand");
+    }
+
+    private void togglePause() {
+        isPaused = !isPaused;
+
+        // W czasie pauzy step() nie wykonuje kroków symulacji
+        if (isPaused) {
+            firing = false;
+        }
+    }
+
+    // ---------------- Zasady gry ----------------
+
+    // Metoda do tworzenia i dodawania ulepszenia
+    public void spawnRandomPowerUp(float x, float y) {
+        if (powerUpDroppedThisLevel) {
+            return; // Już wypadło ulepszenie na tym poziomie
+        }
+
+        double dropChance = 0.2; // 20% szansa na wypadnięcie ulepszenia
+        if (random.nextDouble() <= dropChance) {
+            powerUps.add(x, y, getRandomPowerUpType());
+            powerUpDroppedThisLevel = true; // Zaznaczamy, że ulepszenie już wypadło
+        }
+    }
+
+    // Metoda do losowego wyboru typu ulepszenia
+    private PowerUpType getRandomPowerUpType() {
+        double rand = random.nextDouble();
+        if (rand < 0.33) {
+            return PowerUpType.EXTRA_LIFE;
+        } else if (rand < 0.66) {
+            return PowerUpType.INCREASE_FIRE_RATE;
+        } else {
+            return PowerUpType.SHIELD;
+        }
+    }
+
+    private void applyPowerUp(PowerUpType type) {
+        collisions++;
+        switch (type) {
+            case EXTRA_LIFE:
+                lives++;
                 break;
-            case "left":
-                currentImage = imageLeft;
+            case INCREASE_FIRE_RATE:
+                FireRate();
                 break;
-            default:
-                currentImage = imageStand;
+            case SHIELD:
+                // Tarcza wyłącza się sama po 5 sekundach (efekt SHIELD)
+                b.activateShield();
                 break;
+            // Dodaj inne przypadki w razie potrzeby
         }
     }
 
-   // W klasie Belka, poniżej innych metod
-    public void becomeInvulnerable(int durationMs) {
-    invulnerable = true;
-    invulEndTime = System.currentTimeMillis() + durationMs; 
-    // Na przykład, jeśli 1000, to 1 sekunda nietykalności
-}
+    private void FireRate() {
+        // Wzmocnione strzelanie (trzy kule) przez 4 sekundy - obsługiwane w shootBullet()
+        fireRateBoosted = true;
+        effects.schedule(EffectScheduler.Effect.FIRE_RATE, fireRateTicks);
+    }
 
-// Metoda, która zwraca true, jeśli jesteśmy jeszcze w trybie nietykalności
-    public boolean isInvulnerable() {
-    // Jeśli czas minął, wyłączamy
-    if (invulnerable && System.currentTimeMillis() > invulEndTime) {
-        invulnerable = false;
+    private void initializeLevelConfigs() {
+        levelConfigs = new ArrayList<>();
+
+        // Poziom 1
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
+            Arrays.asList(0.3f, 0.5f, 0.7f),
+            Arrays.asList(0.4f, 0.6f)
+        )));
+
+        // Poziom 2
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.05f, 0.2f, 0.35f, 0.5f, 0.65f, 0.8f, 0.95f),
+            Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
+            Arrays.asList(0.15f, 0.35f, 0.55f, 0.75f, 0.95f),
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
+            Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f)
+        )));
+
+        // Poziom 3
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.05f, 0.2f, 0.35f, 0.5f, 0.65f, 0.8f, 0.95f),
+            Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
+            Arrays.asList(0.15f, 0.35f, 0.55f, 0.75f, 0.95f),
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
+            Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f),
+            Arrays.asList(0.3f, 0.5f, 0.7f, 0.9f)
+        )));
+
+        // Poziom 4 (Boss typu 1)
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.5f), // Rząd dla bossa
+            Arrays.asList(0.1f, 0.3f, 0.7f, 0.9f),
+            Arrays.asList(0.15f, 0.35f, 0.65f, 0.85f),
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f)
+        )));
+
+        // Poziom 5
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
+            Arrays.asList(0.3f, 0.5f, 0.7f),
+            Arrays.asList(0.4f, 0.6f)
+        )));
+
+        // Poziom 6 (Boss typu 2)
+        levelConfigs.add(new LevelConfig(Arrays.asList(
+            Arrays.asList(0.5f), // Rząd dla bossa
+            Arrays.asList(0.1f, 0.3f, 0.7f, 0.9f),
+            Arrays.asList(0.15f, 0.35f, 0.65f, 0.85f),
+            Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
+            Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f)
+        )));
+
+        for (int i = 0; i < levelConfigs.size(); i++) {
+            System.out.println("Poziom " + (i + 1) + ": " + levelConfigs.get(i).getPlanePositionsPerRow());
+        }
     }
-    return invulnerable;
-}
-   
-    // Aktualizuje kształt hitboxa zgodnie z współrzędnymi (x, y)
-    private void updateHitbox() {
-        Polygon p = new Polygon();
-        p.addPoint(10, 0);
-        p.addPoint(60, 35);
-        p.addPoint(10, 70);
 
-        AffineTransform tx = AffineTransform.getTranslateInstance(x, y);
-        hitbox = tx.createTransformedShape(p);
+    private void initializeLevel(int level) {
+        if (level < 1 || level > levelConfigs.size()) {
+            System.err.println("Poziom " + level + " nie jest zdefiniowany.");
+            return;
+        }
+        LevelInitEvent event = new LevelInitEvent();
+        event.begin();
+
+        // Wrogowie przygotowani w tle (jeśli są gotowi dla tego poziomu i rozmiaru planszy)
+        EnemyStore levelEnemies = takePrefetchedLevel(level);
+        boolean prefetched = levelEnemies != null;
+        if (levelEnemies == null) {
+            levelEnemies = buildLevel(level, width);
+        }
+
+        // Podmiana całego zestawu wrogów w jednym kroku; kierunek lotu przechodzi na nowy poziom
+        enemies = levelEnemies;
+        formation = new Formation(enemies, formation != null ? formation.direction() : 1);
+        fireScheduler.reset(enemies);
+        bossPatterns.reset(enemies);
+        bricksDestroyed = 0;
+
+        // Resetujemy flagę, aby ulepszenia mogły ponownie wypadać
+        powerUpDroppedThisLevel = false;
+
+        System.out.println("Inicjalizacja Poziomu " + level + " z konfiguracją: "
+                + levelConfigs.get(level - 1).getPlanePositionsPerRow());
+
+        bricksInLevel = enemies.size();
+        // Nowy zestaw wrogów - siatka musi wskazywać na nowe tablice (także w trakcie ticka)
+        grid.rebuild(enemies, b, width, height);
+        comboCount = 0;
+        lastHitTime = 0;
+        gameOver = false;
+
+        // Kolejny poziom budujemy w tle, póki gracz gra na tym
+        prefetchLevel(level + 1);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = level;
+            event.enemies = enemies.size();
+            event.prefetched = prefetched;
+            event.commit();
+        }
+    }
+
+    // Tworzy wrogów poziomu dla planszy o podanej szerokości. Nie zmienia stanu świata,
+    // więc może działać w wątku w tle (obrazy pochodzą z bezpiecznego wątkowo SpriteCache).
+    private EnemyStore buildLevel(int level, int levelWidth) {
+        LevelConfig config = levelConfigs.get(level - 1);
+        EnemyStore levelEnemies = new EnemyStore();
+
+        int planeWidth = 40;
+        int planeHeight = 30;
+        int startY = 40;
+        int gapY = 5;
+
+        for (int r = 0; r < config.getRows(); r++) {
+            List<Float> planePositions = config.getPlanePositionsInRow(r);
+            if (planePositions.isEmpty()) continue;
+
+            for (float relativeX : planePositions) {
+                float xPos = relativeX * levelWidth - planeWidth / 2.0f;
+                if (xPos < 0) xPos = 0;
+                if (xPos + planeWidth > levelWidth) {
+                    xPos = levelWidth - planeWidth;
+                }
+                float yPos = startY + r * (planeHeight + gapY);
+
+                // Określamy typ wroga w zależności od poziomu lub rzędu
+                EnemyKind kind;
+                // Logika z bossami
+                if (level == 4 && r == 0 && planePositions.size() == 1) {
+                    // Dla poziomu 4: boss typu 1 (lub 2, jeśli chcesz naprzemiennie)
+                    kind = EnemyKind.BOSS1;
+                } else if (level == 6 && r == 0 && planePositions.size() == 1) {
+                    // Dla poziomu 6: boss typu 2
+                    kind = EnemyKind.BOSS2;
+                } else {
+                    // W zależności od poziomu zmieniamy typy wrogów
+                    if (level == 1) {
+                        kind = r % 2 == 0 ? EnemyKind.TYPE1 : EnemyKind.TYPE2;
+                    } else if (level == 2) {
+                        kind = r % 2 == 0 ? EnemyKind.TYPE2 : EnemyKind.TYPE3;
+                    } else if (level == 3) {
+                        kind = EnemyKind.TYPE1;
+                    } else if (level == 5) {
+                        kind = EnemyKind.TYPE4;
+                    } else {
+                        // Domyślnie typ 1 (w przykładzie)
+                        kind = EnemyKind.TYPE1;
+                    }
+                }
+                levelEnemies.add(kind, xPos, yPos);
+            }
+        }
+
+        return levelEnemies;
     }
 
-    void draw(Graphics2D g2d) {
+    // Zleca zbudowanie poziomu w tle
+    private void prefetchLevel(int level) {
+        cancelPrefetch();
+        if (level > levelConfigs.size() || width <= 0) return;
+        int levelWidth = width;
+        prefetchedLevel = level;
+        prefetchedWidth = levelWidth;
+        prefetched = LEVEL_PREFETCH.submit(() -> buildLevel(level, levelWidth));
+    }
 
-        // Jeśli teraz jest nietykalność, zrobimy migotanie: 
-    // jedna klatka rysujemy, drugą – pomijamy
-    if (isInvulnerable()) {
-        long now = System.currentTimeMillis();
-        // Na przykład, jeśli (now / 100) % 2 == 0, pominiemy rysowanie
-        if (((now / 100) % 2) == 0) {
-            // Po prostu return, czyli nie rysujemy tej klatki
-            return; 
+    // Zwraca wrogów zbudowanych w tle albo null, jeśli nie pasują (inny poziom, zmieniony
+    // rozmiar planszy, błąd). Jeśli budowa jeszcze trwa, czekamy - to i tak krócej niż od zera.
+    private EnemyStore takePrefetchedLevel(int level) {
+        Future<EnemyStore> future = prefetched;
+        prefetched = null;
+        if (future == null || prefetchedLevel != level || prefetchedWidth != width) {
+            if (future != null) {
+                future.cancel(false);
+            }
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("Nie udało się przygotować poziomu " + level + " w tle");
+            e.getCause().printStackTrace();
+            return null;
         }
     }
-        g2d.drawImage(currentImage, (int)x, (int)y, width, height, null);
-         // Rysujemy tarczę, jeśli jest aktywna
-         if (shieldActive) {
-            g2d.setColor(new Color(0, 0, 255, 100)); // Półprzezroczysty niebieski
-            g2d.fillOval((int)x - 10, (int)y - 10, width + 20, height + 20);
+
+    private void cancelPrefetch() {
+        if (prefetched != null) {
+            prefetched.cancel(false);
+            prefetched = null;
         }
+    }
 
+    private void shootBullet() {
+        // Standardowa centralna kula
+        bullets.spawnPlayer(b.x + b.width / 2f - 5, b.y);
+        if (fireRateBoosted) {
+            // Lewa kula
+            bullets.spawnPlayer(b.x + b.width / 2f - 15, b.y).setDirection(-1, -2);
+            // Prawa kula
+            bullets.spawnPlayer(b.x + b.width / 2f + 5, b.y).setDirection(1, -2);
+        }
+    }
 
+    private void updatePowerUps() {
+        // Ruch wszystkich ulepszeń, potem usuwanie tych za ekranem i zebranych
+        powerUps.move(motionScale);
+        int size = PowerUpStore.SIZE;
+        for (int i = 0; i < powerUps.size(); i++) {
+            float x = powerUps.x(i);
+            float y = powerUps.y(i);
+            // Sprawdzanie, czy ulepszenie wyleciało poza ekran
+            if (y > height) {
+                powerUps.remove(i--);
+                continue;
+            }
 
+            // Sprawdzanie kolizji ze statkiem gracza (najpierw faza wstępna w siatce)
+            if (grid.touchesPlayer(x, y, size, size)
+                    && Collision.rectsIntersect(x, y, size, size,
+                            b.hullMinX(), b.hullMinY(), Belka.HULL_TIP_X - Belka.HULL_LEFT, Belka.HULL_HEIGHT)) {
+                PowerUpType type = powerUps.type(i);
+                powerUps.remove(i--);
+                applyPowerUp(type);
+            }
+        }
     }
 
-    public Shape getHitbox() {
-        return hitbox;
+    private void updateExplosions() {
+        // Aktualizujemy wybuchy i iskry
+        explosions.update();
     }
-}
 
-class EnemyBulletType1 extends Bullet {
-    public EnemyBulletType1(Plansza p, float startX, float startY) {
-        super(p, startX, startY, 0, 4, BulletOwner.ENEMY, loadImage("enemy_bullet2.png"));
-        this.width = 15;
-        this.height = 26;
+    void incrementScore() {
+        incrementScore(1);
     }
 
-    protected void initializeHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    void incrementScore(int bonus) {
+        long now = timeMillis();
+        if (now - lastHitTime <= 1000) {
+            comboCount++;
+        } else {
+            comboCount = 1;
+        }
+        lastHitTime = now;
+        score += bonus * comboCount;
+        bricksDestroyed++;
+
+        if (bricksDestroyed >= bricksInLevel) {
+            if (currentLevel < maxLevels) {
+                currentLevel++;
+                System.out.println("Przejście do poziomu " + currentLevel);
+                LevelUpEvent event = new LevelUpEvent();
+                if (event.shouldCommit()) {
+                    event.level = currentLevel;
+                    event.score = score;
+                    event.commit();
+                }
+                initializeLevel(currentLevel);
+            } else {
+                endGame("WYGRAŁEŚ! Zdobyłeś " + score + " punktów");
+            }
+        }
     }
- 
-    protected void updateHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+
+    public void playerHit() {
+        collisions++;
+        if (b.isShieldActive()) {
+            // Tarcza pochłania uderzenie, nie odejmujemy życia
+            b.deactivateShield(); // Tarcza dezaktywuje się po pochłonięciu uderzenia
+            // Można dodać dźwięk lub efekt wizualny
+        } else {
+            if (!gameOver) {
+                lives--;
+                if (lives <= 0) {
+                    endGame("Przegrałeś! Twój wynik: " + score);
+                } else {
+                    b.becomeInvulnerable(2500);
+                }
+            }
+        }
     }
 
-    protected void checkCollision() {
-        // Jeśli gracz jest już nietykalny - wychodzimy
-        if (p.b.isInvulnerable()) {
-            return;
+    private void endGame(String message) {
+        gameOver = true;
+        firing = false;
+        GameOverEvent event = new GameOverEvent();
+        if (event.shouldCommit()) {
+            event.won = lives > 0;
+            event.score = score;
+            event.level = currentLevel;
+            event.step = stepCount;
+            event.commit();
         }
-        // Kolizja ze statkiem gracza
-        Area bulletArea = new Area(hitbox);
-        Area belkaArea = new Area(p.b.getHitbox());
-        belkaArea.intersect(bulletArea);
-        if (!belkaArea.isEmpty()) {
-            p.playerHit();
-            p.removeBullet(this);
+        if (gameOverListener != null) {
+            gameOverListener.accept(message);
         }
     }
 
-    private static Image loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
-            System.err.println("Nie udało się załadować: " + path);
-            e.printStackTrace();
-            // Tworzymy zaślepkę
-            BufferedImage temp = new BufferedImage(8, 16, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setColor(Color.MAGENTA);
-            g2.fillRect(0, 0, 8, 16);
-            g2.dispose();
-            return temp;
+    // Usunięcie jest O(1) - pocisk wraca do puli przy najbliższym compact()
+    public void removeBullet(Bullet b) {
+        bullets.remove(b);
+    }
+
+    public void addExplosion(float x, float y) {
+        explosions.add(x, y);
+    }
+
+    // Strzały wrogów zaplanowane na ten tick (harmonogram rozkłada je równo w czasie)
+    // i salwy bossów według ich wzorców
+    private void enemyShoot() {
+        if (countdownActive) return;
+        EnemyVolleyEvent event = new EnemyVolleyEvent();
+        event.begin();
+        int shooters = fireScheduler.fire();
+        int bossBullets = bossPatterns.fire();
+        event.end();
+        if (shooters + bossBullets > 0 && event.shouldCommit()) {
+            event.shooters = shooters;
+            event.bossBullets = bossBullets;
+            event.commit();
+        }
+    }
+
+    private void moveEnemies() {
+        if (formation == null) return;
+        // enemySpeed to piksele na ENEMY_MOVE_DELAY ms - przeliczamy na jeden tick
+        float step = enemySpeed * (float) (tickMillis / ENEMY_MOVE_DELAY);
+        // Przy krawędzi formacja zawraca i schodzi; jeśli zeszła do gracza - trafienie
+        if (formation.move(step, width, b.y)) {
+            playerHit();
         }
     }
 }
 
-// Pocisk wroga typu 2
-class EnemyBulletType2 extends Bullet {
-    public EnemyBulletType2(Plansza p, float startX, float startY) {
-        super(p, startX, startY, 0, 6, BulletOwner.ENEMY, loadImage("enemy_bullet1.png"));
-        this.width = 19;
-        this.height = 30;
+// Nagrywanie sesji: ziarno losowania i całe wejście gracza razem z numerem kroku,
+// przed którym zadziałało. Format pliku (big-endian):
+//   "APRL", wersja (bajt), ziarno (long), ticki na sekundę (double),
+//   limit strzałów wrogów na tick (varint),
+//   zdarzenia: [różnica kroków: varint][typ: bajt][argumenty: varint ze znakiem]...,
+//   na końcu END z liczbą kroków (varint) i skrótem stanu gry (long).
+class SessionRecorder {
+    static final int MAGIC = 0x4150524C; // "APRL"
+    // 2: wrogowie lecą w formacji (wspólne przesunięcie) - zapisy w wersji 1 liczyły
+    //    położenia inaczej i nie odtworzyłyby się z tym samym skrótem stanu
+    // 3: strzały wrogów z harmonogramu; w nagłówku limit strzałów na tick
+    // 4: efekty czasowe (tarcza, nietykalność, odliczanie...) stoją w czasie pauzy
+    // 5: bossowie strzelają wzorcami (BossPatterns) zamiast pojedynczych pocisków
+    static final int VERSION = 5;
+
+    // Typy zdarzeń
+    static final int END = 0;
+    static final int MOVE = 1;      // x myszy
+    static final int FIRE_DOWN = 2;
+    static final int FIRE_UP = 3;
+    static final int PAUSE = 4;
+    static final int RELEASE = 5;   // puszczenie klawisza
+    static final int RESIZE = 6;    // szerokość, wysokość
+
+    private final String path;
+    private DataOutputStream out;
+    private long lastStep = 0;
+    private int events = 0;
+
+    SessionRecorder(String path, GameWorld world) throws IOException {
+        this.path = path;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(world.seed);
+        out.writeDouble(1000.0 / world.tickMillis);
+        writeVarLong(out, world.fireScheduler.shotsPerTick());
     }
 
-    protected void initializeHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    void record(long step, int type, int a, int b) {
+        if (out == null) return;
+        try {
+            writeVarLong(out, step - lastStep);
+            lastStep = step;
+            out.writeByte(type);
+            if (type == MOVE) {
+                writeVarLong(out, zigZag(a));
+            } else if (type == RESIZE) {
+                writeVarLong(out, zigZag(a));
+                writeVarLong(out, zigZag(b));
+            }
+            events++;
+        } catch (IOException e) {
+            fail(e);
+        }
     }
 
-    protected void updateHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    void finish(long step, long stateHash) {
+        if (out == null) return;
+        try {
+            writeVarLong(out, step - lastStep);
+            out.writeByte(END);
+            writeVarLong(out, step);
+            out.writeLong(stateHash);
+            out.close();
+            System.out.println("Zapisano sesję: " + path + " (kroki=" + step + ", zdarzenia=" + events + ")");
+        } catch (IOException e) {
+            fail(e);
+        }
+        out = null;
     }
 
-    protected void checkCollision() {
-        if (p.b.isInvulnerable()) {
-            return;
+    private void fail(IOException e) {
+        System.err.println("Nie udało się zapisać sesji: " + path);
+        e.printStackTrace();
+        try {
+            out.close();
+        } catch (IOException ignored) {
         }
-        // Kolizja ze statkiem gracza
-        Area bulletArea = new Area(hitbox);
-        Area belkaArea = new Area(p.b.getHitbox());
-        belkaArea.intersect(bulletArea);
-        if (!belkaArea.isEmpty()) {
-            p.playerHit();
-            p.removeBullet(this);
+        out = null;
+    }
+
+    static long zigZag(int v) {
+        return ((long) v << 1) ^ (v >> 31);
+    }
+
+    static int unZigZag(long v) {
+        return (int) ((v >>> 1) ^ -(v & 1));
+    }
+
+    static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
         }
+        out.writeByte((int) v);
     }
 
-    private static Image loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
-            System.err.println("Nie udało się załadować: " + path);
-            e.printStackTrace();
-            // Tworzymy zaślepkę
-            BufferedImage temp = new BufferedImage(12, 24, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setColor(Color.ORANGE);
-            g2.fillRect(0, 0, 12, 24);
-            g2.dispose();
-            return temp;
+    static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
         }
+        throw new IOException("Uszkodzona liczba w zapisie sesji");
     }
 }
 
-// Pocisk wroga typu 3
-class EnemyBulletType3 extends Bullet {
-    public EnemyBulletType3(Plansza p, float startX, float startY) {
-        super(p, startX, startY, 0, 4, BulletOwner.ENEMY, loadImage("enemy_bullet3.png"));
-        this.width = 20;
-        this.height = 30;
+// Powtórka nagranej sesji bez okna, tak szybko, jak pozwala procesor.
+// Zdarzenia są podawane do świata dokładnie przed tymi samymi krokami co w nagraniu,
+// więc przy tym samym ziarnie rozgrywka jest identyczna (sprawdza to skrót stanu).
+class SessionReplayer {
+    // Wynik powtórki
+    long steps;
+    long events;
+    long nanos;
+    boolean finished;     // czy nagranie miało zakończenie (END)
+    boolean matches;      // czy skrót stanu zgadza się z nagraniem
+    GameWorld world;
+
+    static SessionReplayer replay(String path) throws IOException {
+        SessionReplayer r = new SessionReplayer();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != SessionRecorder.MAGIC) {
+                throw new IOException("To nie jest zapis sesji: " + path);
+            }
+            int version = in.readUnsignedByte();
+            if (version != SessionRecorder.VERSION) {
+                throw new IOException("Nieobsługiwana wersja zapisu sesji: " + version);
+            }
+            long seed = in.readLong();
+            double tickRate = in.readDouble();
+            GameWorld world = new GameWorld(tickRate, seed);
+            world.fireScheduler.setShotsPerTick((int) SessionRecorder.readVarLong(in));
+            r.world = world;
+
+            long start = System.nanoTime();
+            long step = 0;
+            try {
+                while (true) {
+                    step += SessionRecorder.readVarLong(in);
+                    while (world.stepCount < step) {
+                        world.step();
+                    }
+                    int type = in.readUnsignedByte();
+                    if (type == SessionRecorder.END) {
+                        long total = SessionRecorder.readVarLong(in);
+                        long hash = in.readLong();
+                        while (world.stepCount < total) {
+                            world.step();
+                        }
+                        r.finished = true;
+                        r.matches = world.stateHash() == hash;
+                        break;
+                    }
+                    apply(world, type, in);
+                    r.events++;
+                }
+            } catch (EOFException e) {
+                // Nagranie przerwane (np. awaria) - odtwarzamy tyle, ile zostało zapisane
+                System.err.println("Zapis sesji nie ma zakończenia: " + path);
+            }
+            r.nanos = System.nanoTime() - start;
+            r.steps = world.stepCount;
+        }
+        return r;
+    }
+
+    private static void apply(GameWorld world, int type, DataInputStream in) throws IOException {
+        switch (type) {
+            case SessionRecorder.MOVE:
+                world.movePlayer(SessionRecorder.unZigZag(SessionRecorder.readVarLong(in)));
+                break;
+            case SessionRecorder.FIRE_DOWN:
+                world.startFiring();
+                break;
+            case SessionRecorder.FIRE_UP:
+                world.stopFiring();
+                break;
+            case SessionRecorder.PAUSE:
+                world.pressPause();
+                break;
+            case SessionRecorder.RELEASE:
+                world.releaseDirection();
+                break;
+            case SessionRecorder.RESIZE:
+                int w = SessionRecorder.unZigZag(SessionRecorder.readVarLong(in));
+                int h = SessionRecorder.unZigZag(SessionRecorder.readVarLong(in));
+                world.resize(w, h);
+                break;
+            default:
+                throw new IOException("Nieznane zdarzenie w zapisie sesji: " + type);
+        }
     }
 
-    protected void initializeHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    String summary() {
+        return String.format("Powtórka: kroki=%d, zdarzenia=%d, czas=%.1f ms (%.0f kroków/s), wynik=%d, poziom=%d, życia=%d, zgodność=%s",
+                steps, events, nanos / 1e6, steps / (nanos / 1e9), world.score, world.currentLevel, world.lives,
+                finished ? (matches ? "TAK" : "NIE") : "brak zakończenia");
     }
+}
 
-    protected void updateHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+// Test obciążeniowy bez okna: plansza z zadaną liczbą wrogów, pocisków, ulepszeń i wybuchów
+// (uzupełnianych w każdym ticku), przez podaną liczbę ticków albo sekund. Każdy tick jest też
+// rysowany do obrazu w pamięci. Na końcu raport: percentyle czasu ticka i klatki (ze wszystkich
+// próbek), liczba i czas zbiórek GC, tempo alokacji wątku gry i szczyt zajętości sterty.
+//   java Project --stress [--enemies N] [--bullets N] [--power-ups N] [--explosions N]
+//                         [--ticks N | --seconds S] [--seed N] [--no-render]
+final class StressTest {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 800;
+
+    // Scenariusz
+    int enemies = 2000;
+    int bullets = 5000;
+    int powerUps = 50;
+    int explosions = 200;
+    long ticks = 3000;
+    double seconds = 0;   // > 0 - czas trwania zamiast liczby ticków
+    long seed = 42;
+    boolean render = true;
+
+    private Random random;
+    private GameWorld world;
+    private Plansza view;
+    private BufferedImage frame;
+
+    // Czasy ticków i klatek (ns) - percentyle liczymy z posortowanych próbek
+    private long[] tickNanos = new long[4096];
+    private long[] frameNanos = new long[4096];
+    private int samples;
+
+    // Zwraca null (po wypisaniu błędu), jeśli argumenty są niepoprawne
+    static StressTest parse(String[] args, int from) {
+        StressTest test = new StressTest();
+        try {
+            for (int i = from; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--enemies":
+                        test.enemies = Integer.parseInt(args[++i]);
+                        break;
+                    case "--bullets":
+                        test.bullets = Integer.parseInt(args[++i]);
+                        break;
+                    case "--power-ups":
+                        test.powerUps = Integer.parseInt(args[++i]);
+                        break;
+                    case "--explosions":
+                        test.explosions = Integer.parseInt(args[++i]);
+                        break;
+                    case "--ticks":
+                        test.ticks = Long.parseLong(args[++i]);
+                        test.seconds = 0;
+                        break;
+                    case "--seconds":
+                        test.seconds = Double.parseDouble(args[++i]);
+                        break;
+                    case "--seed":
+                        test.seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--no-render":
+                        test.render = false;
+                        break;
+                    default:
+                        System.err.println("Nieznana opcja testu obciążeniowego: " + args[i]);
+                        return null;
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Niepoprawna wartość opcji testu obciążeniowego: " + e.getMessage());
+            return null;
+        }
+        return test;
     }
 
-    protected void checkCollision() {
-        if (p.b.isInvulnerable()) {
-            return;
+    // Przygotowanie, pomiar i raport
+    String run() {
+        prepare();
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] gcCounts = new long[collectors.size()];
+        long[] gcMillis = new long[collectors.size()];
+        for (int i = 0; i < collectors.size(); i++) {
+            gcCounts[i] = collectors.get(i).getCollectionCount();
+            gcMillis[i] = collectors.get(i).getCollectionTime();
         }
-        // Kolizja ze statkiem gracza
-        Area bulletArea = new Area(hitbox);
-        Area belkaArea = new Area(p.b.getHitbox());
-        belkaArea.intersect(bulletArea);
-        if (!belkaArea.isEmpty()) {
-            p.playerHit();
-            p.removeBullet(this);
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (MemoryPoolMXBean pool : pools) {
+            pool.resetPeakUsage();
         }
-    }
-
-    private static Image loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
-            System.err.println("Nie udało się załadować: " + path);
-            e.printStackTrace();
-            // Tworzymy zaślepkę
-            BufferedImage temp = new BufferedImage(8, 16, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setColor(Color.MAGENTA);
-            g2.fillRect(0, 0, 8, 16);
-            g2.dispose();
-            return temp;
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads != null ? threads.getThreadAllocatedBytes(threadId) : 0;
+
+        Graphics2D g = render ? frame.createGraphics() : null;
+        long parallelBefore = world.bulletStage.parallelTicks();
+        long spriteBuildsBefore = DisplaySprites.builds();
+        long shotsBefore = world.fireScheduler.shots();
+        long deferredBefore = world.fireScheduler.deferredTicks();
+        long start = System.nanoTime();
+        long deadline = seconds > 0 ? start + (long) (seconds * 1e9) : Long.MAX_VALUE;
+        while (seconds > 0 ? System.nanoTime() < deadline : samples < ticks) {
+            long t0 = System.nanoTime();
+            synchronized (world.lock) {
+                drive();
+                world.step();
+                topUp();
+            }
+            long t1 = System.nanoTime();
+            if (g != null) {
+                view.drawFrame(g, WIDTH, HEIGHT, 1f, false);
+            }
+            long t2 = System.nanoTime();
+            record(t1 - t0, t2 - t1);
         }
-    }
-}
-
-// Pocisk wroga typu 4
-class EnemyBulletType4 extends Bullet {
-    public EnemyBulletType4(Plansza p, float startX, float startY) {
-        super(p, startX, startY, 0, 4, BulletOwner.ENEMY, loadImage("enemy_bullet4.png"));
-        this.width = 15;
-        this.height = 26;
+        long elapsed = System.nanoTime() - start;
+        if (g != null) {
+            g.dispose();
+        }
+        long allocated = threads != null ? threads.getThreadAllocatedBytes(threadId) - allocatedBefore : -1;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT,
+                "Test obciążeniowy: ticki=%d, czas=%.2f s (%.0f ticków/s), wrogowie=%d, pociski=%d, ulepszenia=%d, wybuchy=%d, ziarno=%d%n",
+                samples, elapsed / 1e9, samples / (elapsed / 1e9), enemies, bullets, powerUps, explosions, seed));
+        report.append(String.format(Locale.ROOT, "Żywe na końcu: wrogowie=%d, pociski=%d, ulepszenia=%d, wybuchy=%d, iskry=%d%n",
+                world.enemies.aliveCount(), world.bullets.liveCount(), world.powerUps.size(),
+                world.explosions.size(), world.explosions.sparkCount()));
+        report.append(percentiles("Czas ticka [ms]: ", tickNanos));
+        report.append(String.format(Locale.ROOT, "Pociski równolegle: %d z %d ticków%s%n",
+                world.bulletStage.parallelTicks() - parallelBefore, samples,
+                world.bulletStage.isParallel() ? "" : " (tryb sekwencyjny)"));
+        report.append(world.bullets.metrics()).append(System.lineSeparator());
+        report.append(String.format(Locale.ROOT, "Strzały wrogów: %d, ticki z odroczonymi strzałami: %d (limit %d na tick)%n",
+                world.fireScheduler.shots() - shotsBefore, world.fireScheduler.deferredTicks() - deferredBefore,
+                world.fireScheduler.shotsPerTick()));
+        if (render) {
+            report.append(percentiles("Czas klatki [ms]:", frameNanos));
+            // Po pierwszych klatkach sprite'y powinny już być gotowe - przyrost oznacza przebudowy
+            report.append(String.format(Locale.ROOT, "Przeskalowane sprite'y: %d nowych w czasie testu%n",
+                    DisplaySprites.builds() - spriteBuildsBefore));
+        }
+        report.append(SpriteCache.stats()).append(System.lineSeparator());
+        long totalCount = 0;
+        long totalMillis = 0;
+        for (int i = 0; i < collectors.size(); i++) {
+            long count = collectors.get(i).getCollectionCount() - gcCounts[i];
+            long millis = collectors.get(i).getCollectionTime() - gcMillis[i];
+            totalCount += count;
+            totalMillis += millis;
+            report.append(String.format(Locale.ROOT, "GC %s: zbiórki=%d, czas=%d ms%n",
+                    collectors.get(i).getName(), count, millis));
+        }
+        report.append(String.format(Locale.ROOT, "GC razem: zbiórki=%d, czas=%d ms (%.2f%% czasu testu)%n",
+                totalCount, totalMillis, totalMillis * 100.0 / (elapsed / 1e6)));
+        if (allocated >= 0) {
+            report.append(String.format(Locale.ROOT, "Alokacje wątku gry: %.1f MB (%.1f MB/s, %.0f B/tick)%n",
+                    allocated / 1e6, allocated / 1e6 / (elapsed / 1e9), (double) allocated / samples));
+        }
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        report.append(String.format(Locale.ROOT, "Sterta: szczyt=%.1f MB (suma szczytów pul), maks=%.1f MB",
+                peak / 1e6, Runtime.getRuntime().maxMemory() / 1e6));
+        return report.toString();
     }
 
-    protected void initializeHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    // Plansza (widok bez aktywnego rysowania) ze światem po odliczaniu i wygenerowanymi wrogami
+    private void prepare() {
+        random = new Random(seed);
+        System.setProperty("game.render", "passive");
+        System.setProperty("game.seed", String.valueOf(seed));
+        view = new Plansza();
+        view.setSize(WIDTH, HEIGHT);
+        world = view.world;
+        frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        synchronized (world.lock) {
+            world.resize(WIDTH, HEIGHT);
+            while (world.countdownActive) {
+                world.step();
+            }
+            // Gracz nie ginie, a poziom się nie kończy - zestrzeleni wrogowie wracają w topUp()
+            world.lives = Integer.MAX_VALUE / 2;
+            world.b.becomeInvulnerable(Integer.MAX_VALUE);
+            world.bricksInLevel = Integer.MAX_VALUE;
+            EnemyKind[] kinds = {EnemyKind.TYPE1, EnemyKind.TYPE2, EnemyKind.TYPE3, EnemyKind.TYPE4};
+            EnemyStore crowd = new EnemyStore();
+            for (int i = 0; i < enemies; i++) {
+                EnemyKind kind = kinds[i % kinds.length];
+                crowd.add(kind, random.nextFloat() * (WIDTH - kind.width), 40 + random.nextFloat() * (HEIGHT / 2f - 40));
+            }
+            world.enemies = crowd;
+            resetFormation();
+            world.startFiring();
+            topUp();
+        }
     }
 
-    protected void updateHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    // Gracz lata w tę i z powrotem (zbiera ulepszenia, strzela bez przerwy)
+    private void drive() {
+        double phase = world.tickCount * 0.02;
+        world.input.moveMouse((int) (WIDTH / 2 + Math.sin(phase) * (WIDTH / 2 - 60)));
     }
 
-    protected void checkCollision() {
-        if (p.b.isInvulnerable()) {
-            return;
+    // Uzupełnia obiekty do liczebności scenariusza
+    private void topUp() {
+        EnemyStore crowd = world.enemies;
+        boolean revived = false;
+        for (int i = 0; i < crowd.size(); i++) {
+            if (!crowd.isAlive(i)) {
+                crowd.revive(i);
+                revived = true;
+            }
         }
-        // Kolizja ze statkiem gracza
-        Area bulletArea = new Area(hitbox);
-        Area belkaArea = new Area(p.b.getHitbox());
-        belkaArea.intersect(bulletArea);
-        if (!belkaArea.isEmpty()) {
-            p.playerHit();
-            p.removeBullet(this);
+        // Formacja schodzi przy każdym odbiciu - wraca na górę, zanim zejdzie do gracza
+        if (world.formation.drops() > 20) {
+            resetFormation();
+        } else if (revived) {
+            world.formation.refresh();
         }
-    }
+        world.bricksDestroyed = 0;
 
-    private static Image loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
-            System.err.println("Nie udało się załadować: " + path);
-            e.printStackTrace();
-            // Tworzymy zaślepkę
-            BufferedImage temp = new BufferedImage(8, 16, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setColor(Color.MAGENTA);
-            g2.fillRect(0, 0, 8, 16);
-            g2.dispose();
-            return temp;
+        EnemyBulletType[] types = EnemyBulletType.values();
+        while (world.bullets.liveCount() < bullets) {
+            float x = random.nextFloat() * (WIDTH - 20);
+            if (random.nextBoolean()) {
+                world.bullets.spawnPlayer(x, HEIGHT - 30 - random.nextFloat() * HEIGHT / 2);
+            } else {
+                world.bullets.spawnEnemy(types[random.nextInt(types.length)], x, random.nextFloat() * HEIGHT / 2);
+            }
+        }
+        PowerUpType[] powerUpTypes = PowerUpType.values();
+        while (world.powerUps.size() < powerUps) {
+            world.powerUps.add(random.nextFloat() * (WIDTH - PowerUpStore.SIZE), random.nextFloat() * HEIGHT / 2,
+                    powerUpTypes[random.nextInt(powerUpTypes.length)]);
+        }
+        while (world.explosions.size() < explosions) {
+            world.explosions.add(random.nextFloat() * (WIDTH - ExplosionSystem.SIZE),
+                    random.nextFloat() * (HEIGHT - ExplosionSystem.SIZE));
         }
     }
-}
 
-// Pocisk gracza
-class PlayerBullet extends Bullet {
-    public PlayerBullet(Plansza p, float startX, float startY) {
-        super(p, startX, startY, 0, -5, BulletOwner.PLAYER, loadImage("bullet_simple.png"));
-        this.width = 15;
-        this.height = 25;
+    private void resetFormation() {
+        world.formation = new Formation(world.enemies, 1);
+        world.fireScheduler.reset(world.enemies);
+        world.grid.rebuild(world.enemies, world.b, world.width, world.height);
     }
 
-    public PlayerBullet setDirection(float dx, float dy) {
-        this.dx = dx;
-        this.dy = dy;
-        return this;
+    private void record(long tick, long paint) {
+        if (samples == tickNanos.length) {
+            tickNanos = Arrays.copyOf(tickNanos, samples * 2);
+            frameNanos = Arrays.copyOf(frameNanos, samples * 2);
+        }
+        tickNanos[samples] = tick;
+        frameNanos[samples] = paint;
+        samples++;
     }
 
-    protected void initializeHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    private String percentiles(String label, long[] nanos) {
+        long[] sorted = Arrays.copyOf(nanos, samples);
+        Arrays.sort(sorted);
+        return String.format(Locale.ROOT, "%s p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f maks=%.3f%n", label,
+                at(sorted, 0.50), at(sorted, 0.90), at(sorted, 0.99), at(sorted, 0.999),
+                sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
     }
 
-    protected void updateHitbox() {
-        hitbox = new Rectangle2D.Float(x, y, width, height);
+    // Percentyl (metoda najbliższej rangi) w ms
+    private static double at(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
     }
 
-    protected void checkCollision() {
-        // Sprawdzanie kolizji z wrogami
-        for (EnemyPlane plane : p.enemyPlanes) {
-            if (plane.isVisible && hitbox.intersects(plane.getBounds2D())) {
-
-                // 1) Obliczamy pożądane współrzędne dla wybuchu:
-                int explosionW = p.explosionGif.getWidth(null);
-                int explosionH = p.explosionGif.getHeight(null);
-                
-                float explosionX = plane.x + plane.width  / 4f - explosionW / 4f;
-                float explosionY = plane.y + plane.height / 4f - explosionH / 4f;
-
-                // Jeśli to boss
-                if (plane instanceof BossPlane) {
-                    BossPlane boss = (BossPlane) plane;
-                    boss.takeDamage(5); // Boss otrzymuje więcej obrażeń
-                    if (!boss.isVisible) {
-                        p.incrementScore(100); // Bonus za zniszczenie bossa
-                        // Wypuszczenie ulepszenia z bossów
-                        p.spawnRandomPowerUp(plane.x, plane.y);
-                        p.addExplosion(explosionX, explosionY);
-                    }
-                } else {
-                    // Zwykły wróg
-                    plane.isVisible = false;
-                    p.incrementScore();
-                    // Wypuszczenie ulepszenia ze zwykłych wrogów
-                    p.spawnRandomPowerUp(plane.x, plane.y);
-                    p.addExplosion(explosionX, explosionY);
-                }
-                p.removeBullet(this);
-                break;
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
             }
         }
-    }
-
-    private static Image loadImage(String path) {
-        try {
-            return ImageIO.read(new File(path));
-        } catch(IOException e) {
-            System.err.println("Nie udało się załadować: " + path);
-            e.printStackTrace();
-            // Tworzymy zaślepkę
-            BufferedImage temp = new BufferedImage(10, 20, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = temp.createGraphics();
-            g2.setColor(Color.YELLOW);
-            g2.fillRect(0, 0, 10, 20);
-            g2.dispose();
-            return temp;
-        }
+        return null;
     }
 }
 
-// Główna klasa gry
-class Plansza extends JPanel implements MouseMotionListener, MouseListener {
+// Główna klasa gry - widok świata gry (rysowanie i obsługa wejścia)
+class Plansza extends JPanel implements MouseMotionListener, MouseListener, GameLoop.Target {
     // Dodano obraz serduszka
     private Image heartImage;
-    private int heartWidth = 50; 
-    private int heartHeight = 28;
     Image backgroundImage;
-
-    // Liczba żyć
-    private int lives = 3;
-
-    Belka b;                          // Statek
-    ArrayList<EnemyPlane> enemyPlanes;// Wrogie samoloty
-    ArrayList<Bullet> bullets;        // Pociski
-    ArrayList<PowerUp> powerUps;
-    Image explosionGif; // GIF wybuchu
-    private List<Explosion> explosions;
-
-    int score = 0;
-    long lastHitTime = 0;
-    int comboCount = 0;
-    boolean gameOver = false;
-    int currentLevel = 1;            // Zaczynamy od 1-go poziomu
-    final int maxLevels;
-    int bricksInLevel;
-    int bricksDestroyed = 0;
-
-    
-
-// W klasie Plansza
-private boolean isPaused = false;
-private int countdown = 3;        // Licznik (sekundy)
-private boolean countdownActive = true; // Pokazuje, czy odliczanie jest aktywne
-
-// Timer dla strzelania gracza (ciągłe, gdy lewy przycisk myszy jest wciśnięty)
-private Timer shootingTimer;
-private static final int SHOOT_DELAY = 200; 
-
-// Timer dla aktualizacji pocisków
-private Timer gameTimer; 
-private static final int GAME_DELAY = 15; 
-
-// Timer dla powrotu statku do pozycji "stand"
-private Timer standTimer;
-private static final int STAND_DELAY = 300; 
-private int previousMouseX = -1;
-
-// Poziomy
-private List<LevelConfig> levelConfigs;
-
-// Timery dla wrogów
-private Timer enemyShootingTimer;
-private static final int ENEMY_SHOOT_DELAY = 3000;
-private Timer enemyMoveTimer;
-private int enemyDirection = 1; 
-private int enemySpeed = 1; 
-private boolean levelInitialized = false;
-private boolean powerUpDroppedThisLevel = false;
+    SpriteSheet explosionSheet; // Klatki GIF-a wybuchu
+
+    // Model gry
+    final GameWorld world;
+    // Migawki świata publikowane przez symulację - z nich (bez blokady) rysujemy klatki
+    private final SnapshotBuffer snapshots;
+
+// Pętla gry (stały krok symulacji) - zastępuje osobne Timery Swinga
+private final GameLoop gameLoop;
+// Ułamek kroku do interpolacji przy rysowaniu
+private volatile float renderAlpha = 0;
+
+// Aktywne rysowanie przez BufferStrategy (-Dgame.render=passive wyłącza, wtedy rysuje paintComponent)
+private final GameCanvas canvas;
+private volatile boolean activeRendering;
+// Przeskalowane tło w pamięci karty graficznej
+private VolatileImage backgroundVolatile;
+
+// Wygląd nakładki profilera
+private static final Font PROFILER_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+private static final Color PROFILER_BACKGROUND = new Color(0, 0, 0, 160);
+
+// Warstwy klatki: HUD rysowany od nowa tylko po zmianie wartości, kafelki do odświeżenia
+private final HudLayer hud = new HudLayer();
+private final DirtyTiles dirtyTiles = new DirtyTiles();
+// Czy poprzednia klatka miała nakładkę (pauza, odliczanie, koniec gry, profiler)
+private boolean overlayShown = true;
+private String gameOverText;
+// Powyżej tego odsetka brudnych kafelków taniej jest narysować całe tło
+private static final float MAX_DIRTY_FRACTION = 0.6f;
+
+// Czcionki, kolory i napisy nakładek - tworzone raz, a nie w każdej klatce
+private static final Font GAME_OVER_FONT = new Font("Arial", Font.BOLD, 40);
+private static final Font PAUSE_FONT = new Font("Arial", Font.BOLD, 50);
+private static final Font COUNTDOWN_FONT = new Font("Arial", Font.BOLD, 60);
+private static final Color PAUSE_SHADE = new Color(0, 0, 0, 100);
+private static final Color OVERLAY_TEXT = new Color(0, 0, 0, 150);
+private static final String PAUSE_MESSAGE = "PAUZA";
+private static final String[] COUNTDOWN_TEXT = {"0", "1", "2", "3", "4", "5", "6", "7", "8", "9"};
 
 // Konstruktor
 Plansza() {
@@ -942,55 +5063,68 @@ Plansza() {
     addMouseListener(this);
     setLayout(null);
 
-    backgroundImage = loadImage("backgroung.jpg");
-    heartImage = loadImage("heart.png");
-    explosionGif = new ImageIcon("boom3.gif").getImage();
-
-    b = new Belka(360, 700);
-    enemyPlanes = new ArrayList<>();
-    bullets = new ArrayList<>();
-    powerUps = new ArrayList<>(); 
-    explosions = new ArrayList<>();
-
-    shootingTimer = new Timer(SHOOT_DELAY, e -> shootBullet());
-    gameTimer = new Timer(GAME_DELAY, e -> updateBullets());
-    gameTimer.start();
-
-    standTimer = new Timer(STAND_DELAY, e -> b.setDirection("stand"));
-    standTimer.setRepeats(false);
-
-    initializeLevelConfigs();
-    maxLevels = levelConfigs.size();
-
-    enemyShootingTimer = new Timer(ENEMY_SHOOT_DELAY, e -> enemyShoot());
-    enemyShootingTimer.start();
-    enemyMoveTimer = new Timer(30, e -> moveEnemies());
-    enemyMoveTimer.start();
+    if ("passive".equalsIgnoreCase(System.getProperty("game.render", "active"))) {
+        canvas = null;
+    } else {
+        // Płótno zakrywa całą planszę i przekazuje zdarzenia myszy do planszy
+        canvas = new GameCanvas(this);
+        canvas.addMouseMotionListener(this);
+        canvas.addMouseListener(this);
+        add(canvas);
+    }
 
-    // gdzieś w konstruktorze Plansza:
-    Timer startTimer = new Timer(1000, e -> {
-        countdown--;
-        if (countdown <= 0) {
-            countdownActive = false;
-            ((Timer)e.getSource()).stop(); // zatrzymujemy ten timer
+    backgroundImage = SpriteCache.get("backgroung.jpg");
+    heartImage = SpriteCache.get("heart.png");
+    // Klatki GIF-a wybuchu są dekodowane raz, animację prowadzi czas symulacji
+    explosionSheet = SpriteCache.sheet("boom3.gif");
+
+    // Częstotliwość ticków można zmienić: -Dgame.tickRate=<Hz>, limit klatek: -Dgame.maxFps=<fps>
+    double tickRate = Double.parseDouble(System.getProperty("game.tickRate", String.valueOf(1000.0 / GameWorld.GAME_DELAY)));
+    int maxFps = Integer.getInteger("game.maxFps", 120);
+    // Nagrywanie sesji: -Dgame.record=<plik> (opcjonalnie -Dgame.seed=<liczba>)
+    Long seed = Long.getLong("game.seed");
+    world = seed != null ? new GameWorld(tickRate, seed) : new GameWorld(tickRate);
+    snapshots = world.snapshots();
+    // Limit strzałów wrogów w jednym ticku: -Dgame.enemyFireCap=<liczba>
+    world.fireScheduler.setShotsPerTick(Integer.getInteger("game.enemyFireCap", FireScheduler.DEFAULT_SHOTS_PER_TICK));
+    // Ruch i kolizje pocisków w puli wątków (przy dużej liczbie pocisków): -Dgame.parallelBullets=false wyłącza
+    world.bulletStage.setParallel(world.bulletStage.isParallel()
+            && Boolean.parseBoolean(System.getProperty("game.parallelBullets", "true")));
+    world.setGameOverListener(this::showGameOver);
+    world.setCloseListener(() -> SwingUtilities.invokeLater(this::closeWindow));
+    String recordPath = System.getProperty("game.record");
+    if (recordPath != null) {
+        try {
+            world.startRecording(new SessionRecorder(recordPath, world));
+            // Zapis kończymy także przy zamknięciu programu (okno kończy się przez System.exit)
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                synchronized (world.lock) {
+                    world.stopRecording();
+                }
+            }));
+        } catch (IOException e) {
+            System.err.println("Nie udało się rozpocząć nagrywania: " + recordPath);
+            e.printStackTrace();
         }
-        repaint(); // przerysowujemy, aby zaktualizować wyświetlaną cyfrę
-    });
-    startTimer.start();
+    }
+    gameLoop = new GameLoop(this, tickRate, maxFps);
 
     // Inicjalizacja poziomu po wyświetleniu komponentów (aby znać rozmiar ekranu)
     addComponentListener(new ComponentAdapter() {
         public void componentResized(ComponentEvent e) {
-            if (!levelInitialized && getWidth() > 0) {
-                initializeLevel(currentLevel);
-                levelInitialized = true;
+            if (canvas != null) {
+                canvas.setBounds(0, 0, getWidth(), getHeight());
+            }
+            // Przeskalowane sprite'y budujemy od nowa przy następnej klatce
+            DisplaySprites.invalidate();
+            synchronized (world.lock) {
+                world.resize(getWidth(), getHeight());
             }
         }
 
         public void componentShown(ComponentEvent e) {
-            if (!levelInitialized && getWidth() > 0) {
-                initializeLevel(currentLevel);
-                levelInitialized = true;
+            synchronized (world.lock) {
+                world.resize(getWidth(), getHeight());
             }
         }
     });
@@ -998,544 +5132,310 @@ Plansza() {
     // Słuchacz klawiatury
     setFocusable(true);
     requestFocusInWindow();
-    addKeyListener(new KeyAdapter() {
+    // Słuchacze tylko zapisują wejście do bufora - świat odczyta je w następnym ticku
+    KeyListener keys = new KeyAdapter() {
         public void keyPressed(KeyEvent e) {
             switch(e.getKeyCode()) {
                 case KeyEvent.VK_ESCAPE:
-                    if (gameOver == false){
-                        togglePause();
-                    }
+                    world.input.pressPause();
+                    break;
+                case KeyEvent.VK_F3:
+                    // Nakładka z czasami faz (profiler)
+                    world.input.toggleProfiler();
                     break;
             }
         }
         
         public void keyReleased(KeyEvent e) {
-            b.setDirection("stand");
+            world.input.releaseKey();
         }
-    });
-}
-
-private Image loadImage(String path) {
-    try {
-        return ImageIO.read(new File(path));
-    } catch(IOException e) {
-        System.err.println("Nie udało się załadować obrazu: " + path);
-        e.printStackTrace();
-        return null;
+    };
+    addKeyListener(keys);
+    if (canvas != null) {
+        canvas.addKeyListener(keys);
     }
 }
 
-// Metoda do tworzenia i dodawania ulepszenia
-public void spawnRandomPowerUp(float x, float y) {
-    if (powerUpDroppedThisLevel) {
-        return; // Już wypadło ulepszenie na tym poziomie
+// Pętla gry działa tylko wtedy, gdy plansza jest wyświetlana
+public void addNotify() {
+    super.addNotify();
+    if (canvas != null) {
+        activeRendering = canvas.createStrategy();
+        if (activeRendering) {
+            canvas.requestFocusInWindow();
+        } else {
+            // Powrót do rysowania pasywnego
+            remove(canvas);
+        }
     }
+    gameLoop.start();
+}
 
-    double dropChance = 0.2; // 20% szansa na wypadnięcie ulepszenia
-    if (Math.random() <= dropChance) {
-        PowerUp.PowerUpType type = getRandomPowerUpType();
-        PowerUp powerUp = new PowerUp(x, y, type);
-        powerUps.add(powerUp);
-        powerUpDroppedThisLevel = true; // Zaznaczamy, że ulepszenie już wypadło
+public void removeNotify() {
+    gameLoop.stop();
+    synchronized (world.lock) {
+        world.stopRecording();
     }
+    activeRendering = false;
+    super.removeNotify();
 }
 
-// Metoda do losowego wyboru typu ulepszenia
-private PowerUp.PowerUpType getRandomPowerUpType() {
-    double rand = Math.random();
-    if (rand < 0.33) {
-        return PowerUp.PowerUpType.EXTRA_LIFE;
-    } else if (rand < 0.66) {
-        return PowerUp.PowerUpType.INCREASE_FIRE_RATE;
-    } else {
-        return PowerUp.PowerUpType.SHIELD;
+// Jeden krok symulacji (wywoływany przez pętlę gry w jej wątku)
+public void tick() {
+    synchronized (world.lock) {
+        world.step();
     }
 }
 
-private void applyPowerUp(PowerUp.PowerUpType type) {
-    switch (type) {
-        case EXTRA_LIFE:
-            lives++;
-            break;
-        case INCREASE_FIRE_RATE:
-            FireRate();
-            break;
-        case SHIELD:
-            activateShield();
-            break;
-        // Dodaj inne przypadki w razie potrzeby
+// Rysowanie klatki: w trybie aktywnym pętla gry sama prezentuje klatkę,
+// w trybie pasywnym zlecamy przerysowanie Swingowi
+public void render(float alpha) {
+    renderAlpha = alpha;
+    if (activeRendering && canvas.isReady()) {
+        canvas.presentFrame(alpha);
+    } else {
+        repaint();
     }
 }
 
-private void FireRate() {
-    // Zatrzymujemy bieżący timer strzelania
-    shootingTimer.stop(); 
-
-    // Tworzymy nowy timer z wzmocnionym strzelaniem
-    shootingTimer = new Timer(SHOOT_DELAY, e -> {
-        // Standardowa centralna kula
-        addBullet(new PlayerBullet(this, b.x + b.width / 2f - 5, b.y));
-        // Lewa kula
-        addBullet(new PlayerBullet(this, b.x + b.width / 2f - 15, b.y).setDirection(-1, -2));
-        // Prawa kula
-        addBullet(new PlayerBullet(this, b.x + b.width / 2f + 5, b.y).setDirection(1, -2));
-    });
-
-    shootingTimer.start(); // Uruchamiamy strzelanie
-
-    // Timer do powrotu strzelania do standardowego po 4 sekundach
-    Timer resetTimer = new Timer(4000, e -> {
-        shootingTimer.stop(); // Zatrzymujemy wzmocnione strzelanie
-
-        // Przywracamy standardowe strzelanie
-        shootingTimer = new Timer(SHOOT_DELAY, ev -> {
-            addBullet(new PlayerBullet(this, b.x + b.width / 2f - 5, b.y));
-        });
-        shootingTimer.start();
+// Komunikat o końcu gry i zamknięcie okna 5 sekund po jego zamknięciu.
+// Wywoływane z wątku pętli gry, więc okno dialogowe pokazujemy w wątku EDT;
+// czas do zamknięcia odmierza zegar efektów świata (bez Timera).
+private void showGameOver(String message) {
+    SwingUtilities.invokeLater(() -> {
+        JOptionPane.showMessageDialog(this, message);
+        synchronized (world.lock) {
+            world.closeAfter(5000);
+        }
     });
+}
 
-    resetTimer.setRepeats(false); // Uruchamiamy tylko raz
-    resetTimer.start();
+private void closeWindow() {
+    JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(this);
+    if (parentFrame != null) {
+        parentFrame.dispose();
+    }
 }
 
-private void activateShield() {
-    b.activateShield();
-    // Ustawiamy timer do wyłączenia tarczy po określonym czasie
-    Timer shieldTimer = new Timer(5000, e -> b.deactivateShield());
-    shieldTimer.setRepeats(false);
-    shieldTimer.start();
+public void paintComponent(Graphics g) {
+    super.paintComponent(g);
+    // W trybie aktywnym planszę zakrywa płótno rysowane przez pętlę gry
+    if (activeRendering) return;
+    Graphics2D g2d = (Graphics2D) g.create();
+    try {
+        paintGame(g2d, renderAlpha, false);
+    } finally {
+        g2d.dispose();
+    }
 }
 
-private void togglePause() {
-    isPaused = !isPaused;
+// Klatka dla trybu aktywnego - ta sama kolejność co w paintComponent.
+// preserved: tylny bufor zawiera poprzednią klatkę, więc wystarczy odświeżyć brudne kafelki.
+void drawFrame(Graphics g, int width, int height, float alpha, boolean preserved) {
+    paintGame((Graphics2D) g, alpha, preserved);
+}
 
-    if (isPaused) {
-        // Zatrzymujemy wszystkie timery
-        shootingTimer.stop();
-        gameTimer.stop();
-        enemyShootingTimer.stop();
-        enemyMoveTimer.stop();
+// Rysuje najnowszą migawkę świata - bez world.lock, więc symulacja w tym czasie liczy dalej.
+// Profiler to tylko diagnostyka: jego liczniki czytamy bez blokady.
+private void paintGame(Graphics2D g2d, float alpha, boolean preserved) {
+    long paintStart = world.profiler.start();
+    PaintEvent event = new PaintEvent();
+    event.begin();
+    WorldSnapshot s = snapshots.latest();
+    int w = getWidth();
+    int h = getHeight();
+
+    // Nakładki (koniec gry, pauza, odliczanie, profiler) zasłaniają dużą część ekranu -
+    // wtedy i w klatce po nich rysujemy całość
+    boolean overlay = s.gameOver || s.paused || s.countdownActive || world.profiler.isEnabled();
+    boolean resized = dirtyTiles.resize(w, h);
+    boolean incremental = preserved && !resized && !overlay && !overlayShown;
+    overlayShown = overlay;
+
+    hud.update(s.score, s.level, s.lives, w, heartImage, getGraphicsConfiguration());
+    // Kafelki, na których w tej klatce zostaną narysowane sprite'y i HUD
+    s.mark(dirtyTiles, alpha);
+    hud.mark(dirtyTiles);
+    if (incremental && dirtyTiles.dirtyFraction() < MAX_DIRTY_FRACTION && backgroundReady(w, h)) {
+        dirtyTiles.restore(g2d, backgroundImage == null ? null : backgroundVolatile, getBackground());
+        if (backgroundVolatile != null && backgroundVolatile.contentsLost()) {
+            // Tło zgubiło zawartość w trakcie kopiowania - odtwarzamy je w całości
+            drawBackground(g2d);
+        }
     } else {
-        // Uruchamiamy wszystkie timery
-        gameTimer.start();
-        enemyShootingTimer.start();
-        enemyMoveTimer.start();
-    }
-
-    // Przerysowujemy komponent, aby wyświetlić komunikat o pauzie
-    repaint();
-}
-
-private void initializeLevelConfigs() {
-    levelConfigs = new ArrayList<>();
-
-    // Poziom 1
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
-        Arrays.asList(0.3f, 0.5f, 0.7f),
-        Arrays.asList(0.4f, 0.6f)
-    )));
-
-    // Poziom 2
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.05f, 0.2f, 0.35f, 0.5f, 0.65f, 0.8f, 0.95f),
-        Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
-        Arrays.asList(0.15f, 0.35f, 0.55f, 0.75f, 0.95f),
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
-        Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f)
-    )));
-
-    // Poziom 3
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.05f, 0.2f, 0.35f, 0.5f, 0.65f, 0.8f, 0.95f),
-        Arrays.asList(0.1f, 0.3f, 0.5f, 0.7f, 0.9f),
-        Arrays.asList(0.15f, 0.35f, 0.55f, 0.75f, 0.95f),
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
-        Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f),
-        Arrays.asList(0.3f, 0.5f, 0.7f, 0.9f)
-    )));
-
-    // Poziom 4 (Boss typu 1)
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.5f), // Rząd dla bossa
-        Arrays.asList(0.1f, 0.3f, 0.7f, 0.9f),
-        Arrays.asList(0.15f, 0.35f, 0.65f, 0.85f),
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f)
-    )));
-
-    // Poziom 5
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
-        Arrays.asList(0.3f, 0.5f, 0.7f),
-        Arrays.asList(0.4f, 0.6f)
-    )));
-
-    // Poziom 6 (Boss typu 2)
-    levelConfigs.add(new LevelConfig(Arrays.asList(
-        Arrays.asList(0.5f), // Rząd dla bossa
-        Arrays.asList(0.1f, 0.3f, 0.7f, 0.9f),
-        Arrays.asList(0.15f, 0.35f, 0.65f, 0.85f),
-        Arrays.asList(0.2f, 0.4f, 0.6f, 0.8f),
-        Arrays.asList(0.25f, 0.45f, 0.65f, 0.85f)
-    )));
-
-    for (int i = 0; i < levelConfigs.size(); i++) {
-        System.out.println("Poziom " + (i + 1) + ": " + levelConfigs.get(i).getPlanePositionsPerRow());
-    }
-}
-
-private void initializeLevel(int level) {
-    if (level < 1 || level > levelConfigs.size()) {
-        System.err.println("Poziom " + level + " nie jest zdefiniowany.");
-        return;
+        if (backgroundImage == null) {
+            g2d.setColor(getBackground());
+            g2d.fillRect(0, 0, w, h);
+        }
+        drawBackground(g2d);
     }
 
-    enemyPlanes.clear();
-    bricksDestroyed = 0;
-
-    // Resetujemy flagę, aby ulepszenia mogły ponownie wypadać
-    powerUpDroppedThisLevel = false;
-
-    LevelConfig config = levelConfigs.get(level - 1);
-    List<List<Float>> planePositionsPerRow = config.getPlanePositionsPerRow();
+    // Statek, wrogowie, wybuchy, pociski i ulepszenia
+    s.draw(g2d, explosionSheet, alpha);
 
-    System.out.println("Inicjalizacja Poziomu " + level + " z konfiguracją: " + planePositionsPerRow);
+    // Punkty, poziom i życia - gotowy obraz warstwy HUD
+    hud.draw(g2d);
 
-    int planeWidth = 40;
-    int planeHeight = 30;
-    int startY = 40;
-    int gapY = 5;
-
-    for (int r = 0; r < config.getRows(); r++) {
-        List<Float> planePositions = config.getPlanePositionsInRow(r);
-        if (planePositions.isEmpty()) continue;
+    // Jeśli gra się zakończyła
+    if (s.gameOver) {
+        g2d.setFont(GAME_OVER_FONT);
+        g2d.setColor(Color.RED);
+        String msg = gameOverMessage(s);
+        int msgWidth = g2d.getFontMetrics().stringWidth(msg);
+        int x = (w - msgWidth) / 2;
+        int y = h / 2;
+        g2d.drawString(msg, x, y);
+    }
 
-        for (float relativeX : planePositions) {
-            float xPos = relativeX * getWidth() - planeWidth / 2.0f;
-            if (xPos < 0) xPos = 0;
-            if (xPos + planeWidth > getWidth()) {
-                xPos = getWidth() - planeWidth;
-            }
-            float yPos = startY + r * (planeHeight + gapY);
+    if (s.paused && s.countdownActive == false) {
+        g2d.setColor(PAUSE_SHADE); // Czarny z przezroczystością 100/255
+        g2d.fillRect(0, 0, w, h);
 
-            // Określamy typ wroga w zależności od poziomu lub rzędu
-            EnemyPlane enemy;
-            // Logika z bossami
-            if (level == 4 && r == 0 && planePositions.size() == 1) {
-                // Dla poziomu 4: boss typu 1 (lub 2, jeśli chcesz naprzemiennie)
-                enemy = new BossType1(xPos, yPos, this);
-                enemyPlanes.add(enemy);
-            } else if (level == 6 && r == 0 && planePositions.size() == 1) {
-                // Dla poziomu 6: boss typu 2
-                enemy = new BossType2(xPos, yPos, this);
-                enemyPlanes.add(enemy);
-            } else {
-                // W zależności od poziomu zmieniamy typy wrogów
-                if (level == 1) {
-                    if (r % 2 == 0) {
-                        enemy = new EnemyType1(xPos, yPos, this);
-                    } else {
-                        enemy = new EnemyType2(xPos, yPos, this);
-                    }
-                } else if (level == 2) {
-                    if (r % 2 == 0) {
-                        enemy = new EnemyType2(xPos, yPos, this);
-                    } else {
-                        enemy = new EnemyType3(xPos, yPos, this);
-                    }
-                } else if (level == 3) {
-                    enemy = new EnemyType1(xPos, yPos, this);
-                } else if (level == 5) {
-                    enemy = new EnemyType4(xPos, yPos, this);
-                } else {
-                    // Domyślnie typ 1 (w przykładzie)
-                    enemy = new EnemyType1(xPos, yPos, this);
-                }
-                enemyPlanes.add(enemy);
-            }
-        }
+        g2d.setFont(PAUSE_FONT);
+        g2d.setColor(OVERLAY_TEXT); // Półprzezroczysty czarny
+        int msgWidth = g2d.getFontMetrics().stringWidth(PAUSE_MESSAGE);
+        int x = (w - msgWidth) / 2;
+        int y = h / 2;
+        g2d.drawString(PAUSE_MESSAGE, x, y);
     }
 
-    bricksInLevel = enemyPlanes.size();
-    comboCount = 0;
-    lastHitTime = 0;
-    gameOver = false;
-}
-
-private void shootBullet() {
-    Bullet bullet = new PlayerBullet(this, b.x + b.width / 2f - 5, b.y);
-    addBullet(bullet);
-}
+    if (s.countdownActive && s.countdown > 0) {
+        g2d.setFont(COUNTDOWN_FONT);
+        g2d.setColor(OVERLAY_TEXT);
 
-private void updateBullets() {
-    ArrayList<Bullet> bulletsCopy = new ArrayList<>(bullets);
-    for (Bullet bullet : bulletsCopy) {
-        bullet.move();
-    }
+        String text = s.countdown < COUNTDOWN_TEXT.length
+                ? COUNTDOWN_TEXT[s.countdown]
+                : String.valueOf(s.countdown);
+        FontMetrics fm = g2d.getFontMetrics();
+        int textWidth = fm.stringWidth(text);
+        int textHeight = fm.getAscent();
 
-    // Aktualizacja ulepszeń
-    ArrayList<PowerUp> powerUpsCopy = new ArrayList<>(powerUps);
-    for (PowerUp powerUp : powerUpsCopy) {
-        powerUp.move();
-        // Sprawdzanie, czy ulepszenie wyleciało poza ekran
-        if (powerUp.y > getHeight()) {
-            powerUps.remove(powerUp);
-            continue;
-        }
+        // Współrzędne, aby wyświetlić na środku ekranu
+        int x = (w - textWidth) / 2;
+        int y = (h - textHeight) / 2;
 
-        // Sprawdzanie kolizji ze statkiem gracza
-        if (powerUp.getHitbox().intersects(b.getHitbox().getBounds2D())) {
-            applyPowerUp(powerUp.type);
-            powerUps.remove(powerUp);
-        }
+        g2d.drawString(text, x, y);
     }
 
-    // Aktualizujemy wybuchy
-    ArrayList<Explosion> explosionsCopy = new ArrayList<>(explosions);
-    for (Explosion explosion : explosionsCopy) {
-        explosion.update();
-        if (explosion.isFinished()) {
-            explosions.remove(explosion);
-        }
+    if (world.profiler.isEnabled()) {
+        drawProfiler(g2d, s);
     }
 
-    // Aktualizacja stanu tarczy
-    b.updateShield();
-
-    repaint();
-}
-
-void incrementScore() {
-    long now = System.currentTimeMillis();
-    if (now - lastHitTime <= 1000) {
-        comboCount++;
-    } else {
-        comboCount = 1;
-    }
-    lastHitTime = now;
-    score += comboCount;
-    bricksDestroyed++;
+    dirtyTiles.endFrame();
+    world.profiler.endFrame(paintStart);
 
-    if (bricksDestroyed >= bricksInLevel) {
-        if (currentLevel < maxLevels) {
-            currentLevel++;
-            System.out.println("Przejście do poziomu " + currentLevel);
-            initializeLevel(currentLevel);
-        } else {
-            gameOver = true;
-            shootingTimer.stop();
-            gameTimer.stop();
-            enemyShootingTimer.stop();
-            enemyMoveTimer.stop();
-            JOptionPane.showMessageDialog(this, "WYGRAŁEŚ! Zdobyłeś " + score + " punktów");
-            Timer timer = new Timer(5000, e -> {
-                JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(this);
-                parentFrame.dispose();
-            });
-            timer.setRepeats(false);
-            timer.start();
-        }
+    event.end();
+    if (event.shouldCommit()) {
+        event.active = activeRendering;
+        event.bullets = s.bulletCount;
+        event.commit();
     }
 }
 
-void incrementScore(int bonus) {
-    long now = System.currentTimeMillis();
-    if (now - lastHitTime <= 1000) {
-        comboCount++;
-    } else {
-        comboCount = 1;
-    }
-    lastHitTime = now;
-    score += bonus * comboCount;
-    bricksDestroyed++;
+// Czy tło w pamięci karty jest gotowe do odtwarzania fragmentów
+private boolean backgroundReady(int w, int h) {
+    if (backgroundImage == null) return true;
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    return gc != null && backgroundVolatile != null
+            && backgroundVolatile.getWidth() == w && backgroundVolatile.getHeight() == h
+            && backgroundVolatile.validate(gc) == VolatileImage.IMAGE_OK;
+}
 
-    if (bricksDestroyed >= bricksInLevel) {
-        if (currentLevel < maxLevels) {
-            currentLevel++;
-            System.out.println("Przejście do poziomu " + currentLevel);
-            initializeLevel(currentLevel);
+// Napis końca gry - składany raz, a nie w każdej klatce
+private String gameOverMessage(WorldSnapshot s) {
+    if (gameOverText == null) {
+        if (s.level > s.maxLevels) {
+            gameOverText = "WYGRAŁEŚ! Zdobyłeś " + s.score + " punktów";
+        } else if (s.lives <= 0) {
+            gameOverText = "PRZEGRAŁEŚ! Twój wynik: " + s.score;
         } else {
-            gameOver = true;
-            shootingTimer.stop();
-            gameTimer.stop();
-            enemyShootingTimer.stop();
-            enemyMoveTimer.stop();
-            JOptionPane.showMessageDialog(this, "WYGRAŁEŚ! Zdobyłeś " + score + " punktów");
-            Timer timer = new Timer(5000, e -> {
-                JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(this);
-                parentFrame.dispose();
-            });
-            timer.setRepeats(false);
-            timer.start();
+            gameOverText = "Gra zakończona!";
         }
     }
+    return gameOverText;
 }
 
-public void playerHit() {
-    if (b.isShieldActive()) {
-        // Tarcza pochłania uderzenie, nie odejmujemy życia
-        b.deactivateShield(); // Tarcza dezaktywuje się po pochłonięciu uderzenia
-        // Można dodać dźwięk lub efekt wizualny
-    } else {
-        if (!gameOver) {
-            lives--;
-            if (lives <= 0) {
-                gameOver = true;
-                shootingTimer.stop();
-                gameTimer.stop();
-                enemyShootingTimer.stop();
-                enemyMoveTimer.stop();
-
-                JOptionPane.showMessageDialog(this, 
-                        "Przegrałeś! Twój wynik: " + score);
-
-                Timer timer = new Timer(5000, e -> {
-                    JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(this);
-                    parentFrame.dispose();
-                });
-                timer.setRepeats(false);
-                timer.start();
-            } else {
-                b.becomeInvulnerable(2500);
-            }
-        }
+// Nakładka profilera (F3): p50/p99/max każdej fazy z ostatnich FrameProfiler.WINDOW próbek
+// oraz liczby obiektów. Rysowana tylko wtedy, gdy profiler jest włączony.
+private void drawProfiler(Graphics2D g2d, WorldSnapshot s) {
+    FrameProfiler prof = world.profiler;
+    int lineHeight = 14;
+    int x = 10;
+    int y = 60;
+    int lines = FrameProfiler.PHASES + 4;
+
+    g2d.setColor(PROFILER_BACKGROUND);
+    g2d.fillRect(x - 4, y - 4, 290, lines * lineHeight + 8);
+    g2d.setFont(PROFILER_FONT);
+    g2d.setColor(Color.WHITE);
+
+    int textY = y + lineHeight - 3;
+    g2d.drawString(String.format("%-11s %7s %7s %7s", "faza (µs)", "p50", "p99", "max"), x, textY);
+    for (int phase = 0; phase < FrameProfiler.PHASES; phase++) {
+        textY += lineHeight;
+        g2d.drawString(String.format("%-11s %7.1f %7.1f %7.1f", FrameProfiler.NAMES[phase],
+                prof.percentile(phase, 0.50) / 1000.0,
+                prof.percentile(phase, 0.99) / 1000.0,
+                prof.max(phase) / 1000.0), x, textY);
     }
-}
 
-public void addBullet(Bullet b) {
-    bullets.add(b);
+    textY += lineHeight;
+    g2d.drawString("pociski: " + s.bulletCount + "  wrogowie: " + s.enemyCount
+            + "/" + s.enemiesTotal, x, textY);
+    textY += lineHeight;
+    g2d.drawString("ulepszenia: " + s.powerUpCount + "  wybuchy: " + s.explosionCount
+            + "  iskry: " + s.sparkCount, x, textY);
+    textY += lineHeight;
+    g2d.drawString("przerysowania HUD: " + hud.renders(), x, textY);
 }
 
-public void removeBullet(Bullet b) {
-    bullets.remove(b);
-}
-
-public void paintComponent(Graphics g) {
-    super.paintComponent(g);
-    if (backgroundImage != null) {
-        g.drawImage(backgroundImage, 0, 0, getWidth(), getHeight(), this);
+// Tło skalujemy raz do rozmiaru planszy i trzymamy w VolatileImage;
+// obraz jest odtwarzany tylko po zmianie rozmiaru lub utracie zawartości
+private void drawBackground(Graphics g) {
+    if (backgroundImage == null) return;
+    int w = getWidth();
+    int h = getHeight();
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    if (gc == null || w <= 0 || h <= 0) {
+        // Bez ekranu (np. rysowanie do obrazu w pamięci) - tło przeskalowane raz
+        DisplaySprites.draw((Graphics2D) g, backgroundImage, 0, 0, w, h);
+        return;
     }
-
-    Graphics2D g2d = (Graphics2D) g.create();
-
-    // Rysujemy statek
-    b.draw(g2d);
-
-    // Rysujemy wrogów
-    for (EnemyPlane plane : enemyPlanes) {
-        if (plane.isVisible) {
-            plane.draw(g2d);
+    for (int attempt = 0; attempt < 3; attempt++) {
+        if (backgroundVolatile == null || backgroundVolatile.getWidth() != w || backgroundVolatile.getHeight() != h) {
+            if (backgroundVolatile != null) {
+                backgroundVolatile.flush();
+            }
+            backgroundVolatile = gc.createCompatibleVolatileImage(w, h);
+            renderBackground(w, h);
         }
-    }
-
-    // Rysujemy wybuchy
-    for (Explosion explosion : explosions) {
-        explosion.draw(g2d);
-    }
-
-    // Rysujemy pociski
-    for (Bullet bullet : bullets) {
-        bullet.draw(g2d);
-    }
-
-    // Rysujemy ulepszenia
-    for (PowerUp powerUp : powerUps) {
-        powerUp.draw(g2d);
-    }
-
-    // Rysujemy punkty, poziom
-    g2d.setColor(Color.BLACK);
-    g2d.setFont(new Font("Arial", Font.BOLD, 16));
-    g2d.drawString("Punkty: " + score, 10, 20);
-    g2d.drawString("Poziom: " + currentLevel, 10, 40);
-
-    // Rysujemy życia (serduszka)
-    int heartX = getWidth() - heartWidth - 50; // Pozycja serduszka
-    int heartY = 10; // Odległość od górnej krawędzi
-
-    // Rysujemy serduszko
-    g2d.drawImage(heartImage, heartX, heartY, heartWidth, heartHeight, null);
-
-    // Rysujemy liczbę obok serduszka
-    g2d.setColor(Color.BLACK);
-    g2d.setFont(new Font("Arial", Font.BOLD, 16));
-    String livesText = "x " + lives;
-    int textX = heartX - 20; // Odstęp od serduszka
-    int textY = heartY + heartHeight / 2 + 5; // Wyrównanie w pionie
-    g2d.drawString(livesText, textX, textY);
-
-    // Jeśli gra się zakończyła
-    if (gameOver) {
-        g2d.setFont(new Font("Arial", Font.BOLD, 40));
-        g2d.setColor(Color.RED);
-        String msg;
-        if (currentLevel > maxLevels) {
-            msg = "WYGRAŁEŚ! Zdobyłeś " + score + " punktów";
-        } else if (lives <= 0) {
-            msg = "PRZEGRAŁEŚ! Twój wynik: " + score;
-        } else {
-            msg = "Gra zakończona!";
+        int status = backgroundVolatile.validate(gc);
+        if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+            backgroundVolatile.flush();
+            backgroundVolatile = null;
+            continue;
+        }
+        if (status == VolatileImage.IMAGE_RESTORED) {
+            renderBackground(w, h);
+        }
+        g.drawImage(backgroundVolatile, 0, 0, null);
+        if (!backgroundVolatile.contentsLost()) {
+            return;
         }
-        int msgWidth = g2d.getFontMetrics().stringWidth(msg);
-        int x = (getWidth() - msgWidth) / 2;
-        int y = getHeight() / 2;
-        g2d.drawString(msg, x, y);
-    }
-
-    if (isPaused && countdownActive == false) {
-        g2d.setColor(new Color(0, 0, 0, 100)); // Czarny z przezroczystością 100/255
-        g2d.fillRect(0, 0, getWidth(), getHeight());
-
-        String pauseMsg = "PAUZA";
-        g2d.setFont(new Font("Arial", Font.BOLD, 50));
-        g2d.setColor(new Color(0, 0, 0, 150)); // Półprzezroczysty czarny
-        int msgWidth = g2d.getFontMetrics().stringWidth(pauseMsg);
-        int x = (getWidth() - msgWidth) / 2;
-        int y = getHeight() / 2;
-        g2d.drawString(pauseMsg, x, y);
-    }
-
-    if (countdownActive && countdown > 0) {
-        g2d.setFont(new Font("Arial", Font.BOLD, 60));
-        g2d.setColor(new Color(0, 0, 0, 150));
-
-        String text = String.valueOf(countdown);
-        FontMetrics fm = g2d.getFontMetrics();
-        int textWidth = fm.stringWidth(text);
-        int textHeight = fm.getAscent();
-
-        // Współrzędne, aby wyświetlić na środku ekranu
-        int x = (getWidth() - textWidth) / 2;
-        int y = (getHeight() - textHeight) / 2;
-
-        g2d.drawString(text, x, y);
     }
+    // Nie udało się utrzymać obrazu w pamięci karty - rysujemy bez niej
+    DisplaySprites.draw((Graphics2D) g, backgroundImage, 0, 0, w, h);
+}
 
-    g2d.dispose();
+private void renderBackground(int w, int h) {
+    Graphics2D g2 = backgroundVolatile.createGraphics();
+    g2.drawImage(backgroundImage, 0, 0, w, h, null);
+    g2.dispose();
 }
 
+// Ruch myszy tylko nadpisuje pozycję w buforze; klatkę rysuje pętla gry po następnym ticku
 public void mouseMoved(MouseEvent e) {
-    if (isPaused || gameOver) return;
-
-    int mouseX = e.getX();
-    if (previousMouseX != -1) {
-        if (mouseX > previousMouseX) {
-            b.setDirection("right");
-        } else if (mouseX < previousMouseX) {
-            b.setDirection("left");
-        }
-    }
-    previousMouseX = mouseX;
-
-    float newX = mouseX - (b.width / 2f);
-    if (newX < 0) newX = 0;
-    if (newX + b.width > getWidth()) {
-        newX = getWidth() - b.width;
-    }
-    b.setX(newX);
-    repaint();
-    standTimer.restart();
+    world.input.moveMouse(e.getX());
 }
 
 public void mouseDragged(MouseEvent e) {
@@ -1543,69 +5443,58 @@ public void mouseDragged(MouseEvent e) {
 }
 
 public void mousePressed(MouseEvent e) {
-    // Jeśli trwa odliczanie - nie strzelamy
-    if (countdownActive) return;
-    shootingTimer.start();
-}
-
-public void addExplosion(float x, float y) {
-    // Tworzymy obiekt wybuchu na podstawie GIF-a
-    Explosion explosion = new Explosion(x, y, explosionGif);
-    explosions.add(explosion);
+    world.input.pressFire();
 }
 
 public void mouseReleased(MouseEvent e) {
-    shootingTimer.stop();
+    world.input.releaseFire();
 }
 
 public void mouseClicked(MouseEvent e) {}
 public void mouseEntered(MouseEvent e) {}
 public void mouseExited(MouseEvent e) {}
-
-private void enemyShoot() {
-    if (countdownActive) return;
-    for (EnemyPlane plane : enemyPlanes) {
-        if (plane.isVisible) {
-            plane.shoot();
-        }
-    }
 }
 
-private void moveEnemies() {
-    boolean changeDirection = false;
-    for (EnemyPlane plane : enemyPlanes) {
-        if (plane.isVisible) {
-            plane.x += enemySpeed * enemyDirection;
-            // Jeśli dotknęli lewej/prawej krawędzi
-            if (plane.x < 0 || plane.x + plane.width > getWidth()) {
-                changeDirection = true;
+// Główna klasa z metodą main()
+public class Project {
+    public static void main(String[] args) {
+        // java Project --replay <plik> - powtórka nagranej sesji bez okna
+        if (args.length >= 2 && args[0].equals("--replay")) {
+            try {
+                SessionReplayer replay = SessionReplayer.replay(args[1]);
+                System.out.println(replay.summary());
+                System.exit(replay.finished && !replay.matches ? 1 : 0);
+            } catch (IOException e) {
+                System.err.println("Nie udało się odtworzyć sesji: " + args[1]);
+                e.printStackTrace();
+                System.exit(2);
             }
+            return;
         }
-    }
-    if (changeDirection) {
-        enemyDirection *= -1;
-        for (EnemyPlane plane : enemyPlanes) {
-            if (plane.isVisible) {
-                plane.y += plane.height / 2;
-                // Jeśli wrogowie zeszli do gracza
-                if (plane.y + plane.height >= b.y) {
-                    playerHit();
-                    return;
-                }
+        // java Project --stress [opcje] - test obciążeniowy bez okna z raportem wydajności
+        if (args.length >= 1 && args[0].equals("--stress")) {
+            if (System.getProperty("java.awt.headless") == null) {
+                System.setProperty("java.awt.headless", "true");
+            }
+            StressTest test = StressTest.parse(args, 1);
+            if (test == null) {
+                System.exit(2);
             }
+            System.out.println(test.run());
+            System.exit(0);
         }
-    }
-    repaint();
-}
-}
-
-// Główna klasa z metodą main()
-public class Project {
-    public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
-            Plansza p = new Plansza();
             JFrame jf = new JFrame();
-            jf.add(p);
+            // Najpierw ekran ładowania - gra startuje, gdy wszystkie obrazy są w pamięci
+            LoadingScreen loading = new LoadingScreen();
+            jf.add(loading);
+            loading.start(() -> {
+                Plansza p = new Plansza();
+                jf.remove(loading);
+                jf.add(p);
+                jf.revalidate();
+                p.requestFocusInWindow();
+            });
             jf.setTitle("Samolot");
             jf.setSize(800, 800);
             jf.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -0,0 +1,521 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Benchmarki najgorętszych ścieżek gry: tick symulacji, kolizje pocisków,
+// tworzenie pocisków i rysowanie klatki.
+//
+// Kompilacja i uruchomienie (z katalogu z Project.java i obrazkami):
+//   javac -encoding UTF-8 -d out Project.java benchmarks/Benchmarks.java
+//   java -cp out Benchmarks [filtr...] [-wi 3] [-i 5] [-t 1000]
+//
+// Dla każdego przypadku podajemy liczbę operacji na sekundę (średnia z iteracji
+// pomiarowych ± odchylenie standardowe) oraz alokacje: bajty na operację i MB/s,
+// liczone z licznika alokacji wątku (com.sun.management.ThreadMXBean).
+public class Benchmarks {
+    // Jedna mierzona operacja; wynik trafia do "czarnej dziury", aby JIT jej nie usunął
+    interface Op {
+        long run();
+    }
+
+    static final class Case {
+        final String name;
+        final String param;
+        final Runnable setup;
+        final Op op;
+
+        Case(String name, String param, Runnable setup, Op op) {
+            this.name = name;
+            this.param = param;
+            this.setup = setup;
+            this.op = op;
+        }
+    }
+
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 800;
+    private static final int[] BULLET_COUNTS = {0, 500, 2000, 20000};
+    private static final int POSITIONS = 1024; // potęga dwójki
+
+    private static volatile long sink;
+
+    private static final com.sun.management.ThreadMXBean threads = allocationBean();
+
+    // Stan przypadków (ustawiany w setup, używany w op)
+    private static GameWorld world;
+    private static Plansza view;
+    private static BufferedImage frame;
+    private static Bullet bullet;
+    private static final WorldSnapshot snapshot = new WorldSnapshot();
+    private static final Random random = new Random(42);
+    private static final float[] posX = new float[POSITIONS];
+    private static final float[] posY = new float[POSITIONS];
+    private static final int[] posTarget = new int[POSITIONS];
+    private static int cursor;
+
+    public static void main(String[] args) {
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        int warmupIterations = 3;
+        int iterations = 5;
+        int iterationMillis = 1000;
+        List<String> filters = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    iterationMillis = Integer.parseInt(args[++i]);
+                    break;
+                default:
+                    filters.add(args[i]);
+                    break;
+            }
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%-36s %-14s %14s %12s %12s %10s",
+                "Benchmark", "Parametr", "ops/s", "±", "B/op", "MB/s"));
+        for (Case c : cases()) {
+            if (!matches(c, filters)) continue;
+            run(c, warmupIterations, iterations, iterationMillis);
+        }
+        System.out.println(SpriteCache.stats());
+    }
+
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+
+        // Pełny krok symulacji przy stałej liczbie pocisków i pełnej formacji wrogów
+        for (int n : BULLET_COUNTS) {
+            cases.add(new Case("GameWorld.step", "pociski=" + n,
+                    () -> world = newWorld(n),
+                    () -> {
+                        world.step();
+                        topUp(world, n);
+                        reviveEnemies(world);
+                        return world.tickCount;
+                    }));
+        }
+
+        // To samo bez puli wątków (przy tysiącach pocisków krok domyślnie liczy je równolegle)
+        for (int n : new int[]{2000, 20000}) {
+            cases.add(new Case("GameWorld.step (sekwencyjnie)", "pociski=" + n,
+                    () -> {
+                        world = newWorld(n);
+                        world.bulletStage.setParallel(false);
+                    },
+                    () -> {
+                        world.step();
+                        topUp(world, n);
+                        reviveEnemies(world);
+                        return world.tickCount;
+                    }));
+        }
+
+        // Kolizje pocisku gracza: pudło (najczęstszy przypadek) i trafienie
+        cases.add(new Case("PlayerBullet.checkCollision", "pudło",
+                () -> setupPlayerBullet(false),
+                () -> {
+                    int i = cursor++ & (POSITIONS - 1);
+                    bullet.x = posX[i];
+                    bullet.y = posY[i];
+                    bullet.checkCollision();
+                    return world.score;
+                }));
+        cases.add(new Case("PlayerBullet.checkCollision", "trafienie",
+                () -> setupPlayerBullet(true),
+                () -> {
+                    int i = cursor++ & (POSITIONS - 1);
+                    bullet.x = posX[i];
+                    bullet.y = posY[i];
+                    bullet.checkCollision();
+                    // Przywracamy stan sprzed trafienia, aby każda operacja była taka sama
+                    world.enemies.revive(posTarget[i]);
+                    world.formation.refresh();
+                    world.bricksDestroyed = 0;
+                    world.explosions.clear();
+                    world.powerUps.clear();
+                    world.bullets.compact();
+                    bullet = world.bullets.spawnPlayer(0, 0);
+                    return world.score;
+                }));
+
+        // Wybuchy i iskry: stała liczba żywych wybuchów (nowe w miejsce wygasłych)
+        for (int n : new int[]{100, 1000}) {
+            cases.add(new Case("ExplosionSystem.update", "wybuchy=" + n,
+                    () -> world = newWorld(0),
+                    () -> {
+                        world.tickCount++;
+                        int lifetimeTicks = (int) (ExplosionSystem.LIFETIME_MILLIS / world.tickMillis) + 1;
+                        for (int k = 0; k < n / lifetimeTicks + 1; k++) {
+                            world.explosions.add((world.tickCount * 37 + k * 101) % WIDTH, (k * 53) % HEIGHT);
+                        }
+                        world.explosions.update();
+                        return world.explosions.sparkCount();
+                    }));
+        }
+
+        // Siatka kolizji nad tysiącami wrogów w formacji (przejście po tablicach EnemyStore)
+        for (int n : new int[]{1000, 10000}) {
+            cases.add(new Case("SpatialGrid.rebuild", "wrogowie=" + n,
+                    () -> setupCrowd(n),
+                    () -> {
+                        world.grid.rebuild(world.enemies, world.b, world.width, world.height);
+                        return world.grid.firstEnemyHit(WIDTH / 2f, HEIGHT / 4f, 10, 20, world.enemies);
+                    }));
+            // Zapytanie pocisku gracza (prostokąt 10 x 20) w losowych miejscach nad wrogami
+            cases.add(new Case("SpatialGrid.firstEnemyHit", "wrogowie=" + n,
+                    () -> setupCrowdQueries(n),
+                    () -> {
+                        int i = cursor++ & (POSITIONS - 1);
+                        return world.grid.firstEnemyHit(posX[i], posY[i], 10, 20, world.enemies);
+                    }));
+        }
+
+        // Salwa wzorca bossa: pierścień i spirala z tablic kątów, pociski z puli
+        for (int n : new int[]{16, 256}) {
+            cases.add(new Case("BossPatterns.emit", "pierścień=" + n,
+                    () -> world = newWorld(0),
+                    () -> {
+                        int fired = world.bossPatterns.emit(BulletPattern.RING_16, (int) world.tickCount++, 400, 200, n);
+                        world.bullets.clear();
+                        return fired;
+                    }));
+        }
+
+        // Kolizje pocisku wroga: daleko od statku (odrzuca siatka) i tuż obok kadłuba
+        cases.add(new Case("EnemyBulletType1.checkCollision", "daleko",
+                () -> setupEnemyBullet(false),
+                () -> {
+                    int i = cursor++ & (POSITIONS - 1);
+                    bullet.x = posX[i];
+                    bullet.y = posY[i];
+                    bullet.checkCollision();
+                    return world.lives;
+                }));
+        cases.add(new Case("EnemyBulletType1.checkCollision", "blisko",
+                () -> setupEnemyBullet(true),
+                () -> {
+                    int i = cursor++ & (POSITIONS - 1);
+                    bullet.x = posX[i];
+                    bullet.y = posY[i];
+                    bullet.checkCollision();
+                    return world.lives;
+                }));
+
+        // Tworzenie pocisków: z gotowym obrazem, z wczytaniem i obrotem obrazu, z puli
+        cases.add(new Case("new EnemyBulletType1", "obraz w cache",
+                () -> world = newWorld(0),
+                () -> new EnemyBulletType1(world, 100, 100).width));
+        cases.add(new Case("new EnemyBulletType1", "wczytanie+obrót",
+                () -> world = newWorld(0),
+                () -> {
+                    SpriteCache.clear();
+                    return new EnemyBulletType1(world, 100, 100).width;
+                }));
+        cases.add(new Case("new PlayerBullet", "obraz w cache",
+                () -> world = newWorld(0),
+                () -> new PlayerBullet(world, 100, 100).width));
+        cases.add(new Case("BulletStore.spawnEnemy", "z puli",
+                () -> world = newWorld(0),
+                () -> {
+                    Bullet b = world.bullets.spawnEnemy(EnemyBulletType.TYPE1, 100, 100);
+                    world.bullets.remove(b);
+                    world.bullets.compact();
+                    return b.width;
+                }));
+
+        // Migawka do rysowania (publikowana po każdym kroku, gdy świat ma widok)
+        for (int n : BULLET_COUNTS) {
+            cases.add(new Case("WorldSnapshot.capture", "pociski=" + n,
+                    () -> world = newWorld(n),
+                    () -> {
+                        snapshot.capture(world);
+                        return snapshot.bulletCount;
+                    }));
+        }
+
+        // Rysowanie pełnej klatki do obrazu w pamięci
+        for (int n : BULLET_COUNTS) {
+            cases.add(new Case("Plansza.paintComponent", "pociski=" + n,
+                    () -> setupView(n, 0),
+                    Benchmarks::paintFrame));
+        }
+        // Ta sama klatka z żywymi wybuchami i ich iskrami
+        cases.add(new Case("Plansza.paintComponent", "wybuchy=1000",
+                () -> setupView(0, 1000),
+                Benchmarks::paintFrame));
+        return cases;
+    }
+
+    // ---------------- Przygotowanie stanu ----------------
+
+    // Świat po odliczaniu, z nieśmiertelnym graczem, aby pomiar nie kończył gry
+    private static GameWorld newWorld(int bullets) {
+        GameWorld w = new GameWorld(1000.0 / GameWorld.GAME_DELAY);
+        prepare(w, bullets);
+        return w;
+    }
+
+    private static void prepare(GameWorld w, int bullets) {
+        w.resize(WIDTH, HEIGHT);
+        while (w.countdownActive) {
+            w.step();
+        }
+        w.lives = Integer.MAX_VALUE / 2;
+        w.b.becomeInvulnerable(Integer.MAX_VALUE);
+        // Poziom nigdy się nie kończy - zestrzeleni wrogowie wracają w reviveEnemies()
+        w.bricksInLevel = Integer.MAX_VALUE;
+        topUp(w, bullets);
+        w.grid.rebuild(w.enemies, w.b, w.width, w.height);
+    }
+
+    // Przywraca zestrzelonych wrogów, a co 4096 ticków także pozycję startową formacji
+    // (aby nie zeszła poza ekran w czasie długiego pomiaru) i harmonogram ich strzałów
+    private static void reviveEnemies(GameWorld w) {
+        boolean revived = false;
+        for (int i = 0; i < w.enemies.size(); i++) {
+            if (!w.enemies.isAlive(i)) {
+                w.enemies.revive(i);
+                revived = true;
+            }
+        }
+        if ((w.tickCount & 4095) == 0) {
+            w.formation = new Formation(w.enemies, 1);
+            w.fireScheduler.reset(w.enemies);
+        } else if (revived) {
+            w.formation.refresh();
+        }
+        w.bricksDestroyed = 0;
+    }
+
+    // Uzupełnia pociski do podanej liczby: połowa gracza (od dołu), połowa wrogów (od góry)
+    private static void topUp(GameWorld w, int target) {
+        EnemyBulletType[] types = EnemyBulletType.values();
+        while (w.bullets.liveCount() < target) {
+            float x = random.nextFloat() * (WIDTH - 20);
+            if (random.nextBoolean()) {
+                w.bullets.spawnPlayer(x, HEIGHT - 30 - random.nextFloat() * HEIGHT / 2);
+            } else {
+                w.bullets.spawnEnemy(types[random.nextInt(types.length)], x, random.nextFloat() * HEIGHT / 2);
+            }
+        }
+    }
+
+    private static void setupPlayerBullet(boolean hit) {
+        world = newWorld(0);
+        bullet = world.bullets.spawnPlayer(0, 0);
+        int n = 0;
+        while (n < POSITIONS) {
+            if (hit) {
+                EnemyStore enemies = world.enemies;
+                int id = random.nextInt(enemies.size());
+                posX[n] = enemies.left(id) + random.nextFloat() * enemies.width(id) - bullet.width / 2f;
+                posY[n] = enemies.top(id) + random.nextFloat() * enemies.height(id) - bullet.height / 2f;
+                // Liczy się pierwszy trafiony wróg z listy
+                posTarget[n] = firstHit(posX[n], posY[n], bullet.width, bullet.height);
+                n++;
+            } else {
+                float x = random.nextFloat() * (WIDTH - bullet.width);
+                float y = random.nextFloat() * (HEIGHT - bullet.height);
+                if (firstHit(x, y, bullet.width, bullet.height) < 0) {
+                    posX[n] = x;
+                    posY[n] = y;
+                    n++;
+                }
+            }
+        }
+        cursor = 0;
+    }
+
+    private static int firstHit(float x, float y, float w, float h) {
+        EnemyStore enemies = world.enemies;
+        for (int i = 0; i < enemies.size(); i++) {
+            if (enemies.isAlive(i) && Collision.rectsIntersect(x, y, w, h,
+                    enemies.left(i), enemies.top(i), enemies.width(i), enemies.height(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Świat z n małymi wrogami rozrzuconymi w górnej połowie planszy, w jednej formacji
+    private static void setupCrowd(int n) {
+        world = newWorld(0);
+        EnemyStore crowd = new EnemyStore();
+        EnemyKind kind = EnemyKind.TYPE1;
+        for (int i = 0; i < n; i++) {
+            crowd.add(kind, random.nextFloat() * (WIDTH - kind.width), random.nextFloat() * (HEIGHT / 2f));
+        }
+        world.enemies = crowd;
+        world.formation = new Formation(crowd, 1);
+    }
+
+    // Tłum wrogów ze zbudowaną siatką i losowymi pozycjami pocisku w górnej połowie planszy
+    private static void setupCrowdQueries(int n) {
+        setupCrowd(n);
+        world.grid.rebuild(world.enemies, world.b, world.width, world.height);
+        for (int i = 0; i < POSITIONS; i++) {
+            posX[i] = random.nextFloat() * (WIDTH - 10);
+            posY[i] = random.nextFloat() * (HEIGHT / 2f);
+        }
+        cursor = 0;
+    }
+
+    private static void setupEnemyBullet(boolean near) {
+        world = new GameWorld(1000.0 / GameWorld.GAME_DELAY);
+        prepare(world, 0);
+        // Gracz musi być "trafialny", inaczej sprawdzenie kończy się od razu
+        world.b = new Belka(world, world.b.x, world.b.y);
+        world.grid.rebuild(world.enemies, world.b, world.width, world.height);
+        bullet = new EnemyBulletType1(world, 0, 0);
+        Belka b = world.b;
+        int n = 0;
+        while (n < POSITIONS) {
+            float x;
+            float y;
+            if (near) {
+                x = b.hullMinX() - bullet.width + random.nextFloat() * (b.hullMaxX() - b.hullMinX() + 2 * bullet.width);
+                y = b.hullMinY() - bullet.height + random.nextFloat() * (b.hullMaxY() - b.hullMinY() + 2 * bullet.height);
+                if (!world.grid.touchesPlayer(x, y, bullet.width, bullet.height)) continue;
+            } else {
+                x = random.nextFloat() * (WIDTH - bullet.width);
+                y = random.nextFloat() * (HEIGHT / 2f);
+            }
+            if (b.hullIntersects(x, y, bullet.width, bullet.height)) continue;
+            posX[n] = x;
+            posY[n] = y;
+            n++;
+        }
+        cursor = 0;
+    }
+
+    private static void setupView(int bullets, int explosions) {
+        System.setProperty("game.render", "passive");
+        view = new Plansza();
+        view.setSize(WIDTH, HEIGHT);
+        world = view.world;
+        synchronized (world.lock) {
+            prepare(world, bullets);
+            for (int k = 0; k < explosions; k++) {
+                world.explosions.add((k * 37) % WIDTH, (k * 53) % HEIGHT);
+            }
+            world.step();
+        }
+        frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static long paintFrame() {
+        Graphics2D g = frame.createGraphics();
+        view.paintComponent(g);
+        g.dispose();
+        return frame.getRGB(WIDTH / 2, HEIGHT / 2);
+    }
+
+    // ---------------- Pomiar ----------------
+
+    private static void run(Case c, int warmupIterations, int iterations, int iterationMillis) {
+        c.setup.run();
+        long iterationNanos = iterationMillis * 1_000_000L;
+
+        // Dobieramy wielkość paczki, aby odczyt zegara nie zaburzał krótkich operacji
+        int batch = 1;
+        while (batch < (1 << 20)) {
+            long start = System.nanoTime();
+            runBatch(c.op, batch);
+            if (System.nanoTime() - start >= 100_000) break;
+            batch *= 2;
+        }
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(c.op, batch, iterationNanos);
+        }
+
+        double[] rates = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        long totalNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long ops = iteration(c.op, batch, iterationNanos);
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocatedBytes() - bytesBefore;
+            rates[i] = ops / (elapsed / 1e9);
+            totalOps += ops;
+            totalBytes += bytes;
+            totalNanos += elapsed;
+        }
+
+        double mean = 0;
+        for (double r : rates) mean += r;
+        mean /= iterations;
+        double variance = 0;
+        for (double r : rates) variance += (r - mean) * (r - mean);
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+
+        String bytesPerOp;
+        String mbPerSecond;
+        if (threads != null) {
+            bytesPerOp = String.format(Locale.ROOT, "%.1f", (double) totalBytes / totalOps);
+            mbPerSecond = String.format(Locale.ROOT, "%.1f", totalBytes / (totalNanos / 1e9) / (1024 * 1024));
+        } else {
+            bytesPerOp = "n/d";
+            mbPerSecond = "n/d";
+        }
+        System.out.println(String.format(Locale.ROOT, "%-36s %-14s %14.1f %12.1f %12s %10s",
+                c.name, c.param, mean, error, bytesPerOp, mbPerSecond));
+    }
+
+    private static long iteration(Op op, int batch, long iterationNanos) {
+        long ops = 0;
+        long start = System.nanoTime();
+        do {
+            runBatch(op, batch);
+            ops += batch;
+        } while (System.nanoTime() - start < iterationNanos);
+        return ops;
+    }
+
+    private static void runBatch(Op op, int batch) {
+        long acc = 0;
+        for (int i = 0; i < batch; i++) {
+            acc += op.run();
+        }
+        sink = acc;
+    }
+
+    private static boolean matches(Case c, List<String> filters) {
+        if (filters.isEmpty()) return true;
+        String id = c.name + " " + c.param;
+        for (String f : filters) {
+            if (id.contains(f)) return true;
+        }
+        return false;
+    }
+
+    private static long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            }
+        }
+        return null;
+    }
+}